@@ -0,0 +1,100 @@
+package com.weave.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of one top-20 query over an index of several mapped segments, searched
+ * sequentially ({@code parallelism=1}) or fanned out over the search pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentedIndexSearchBenchmark {
+    private static final int VOCABULARY = 5_000;
+    private static final long NOW = 1_767_225_600_000L;
+
+    @Param({"50000", "400000"})
+    public int documents;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"w7", "w3 w12", "w1 w2 w"})
+    public String query;
+
+    private Path directory;
+    private SegmentedIndex index;
+    private QueryStatistics statistics;
+    private Bm25Scorer scorer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segmented-index-benchmark");
+        // Eight segments, as a busy node has between merges
+        index = SegmentedIndex.open(directory, documents / 8, parallelism);
+        Random random = new Random(42);
+        for (int i = 0; i < documents; i++) {
+            SearchDocument document = new SearchDocument(new UUID(1, i), SearchDocument.Type.MESSAGE,
+                new UUID(0, random.nextInt(200)), NOW - random.nextInt(365 * 24) * 3_600_000L);
+            index.add(document, text(random));
+        }
+        index.flush();
+        statistics = index.statistics(Tokenizer.tokenize(query), true);
+        scorer = new Bm25Scorer(NOW);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<ScoredDocument> search() {
+        TopKCollector collector = new TopKCollector(20);
+        index.search(statistics, null, scorer, collector);
+        return collector.results();
+    }
+
+    /**
+     * Zipf-like word choice, so some terms are common and others rare.
+     */
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 5 + random.nextInt(20);
+        for (int i = 0; i < words; i++) {
+            int word = (int) Math.floor(Math.pow(VOCABULARY, random.nextDouble()));
+            text.append('w').append(word).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -1,6 +1,6 @@
 package com.weave.controller;
 
-import com.weave.dto.MessageDTO;
+import com.weave.dto.MessagePageDTO;
 import com.weave.dto.SendMessageRequest;
 import com.weave.dto.SendMessageResponse;
 import com.weave.service.MessageService;
@@ -8,12 +8,13 @@ import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/v1/messages")
 public class MessageController {
+    private static final int MAX_LIMIT = 200;
+    
     private final MessageService messageService;
 
     public MessageController(MessageService messageService) {
@@ -25,9 +26,21 @@ public class MessageController {
         return ResponseEntity.ok(messageService.sendMessage(request));
     }
     
+    /**
+     * Pages through a thread's history. Without a cursor returns the newest messages; pass a
+     * page's olderCursor as "before" to load earlier ones, or its newerCursor as "after" for
+     * later ones. Messages in a page are oldest first.
+     */
     @GetMapping("/thread/{threadId}")
-    public ResponseEntity<List<MessageDTO>> getMessagesByThread(@PathVariable UUID threadId) {
-        return ResponseEntity.ok(messageService.getMessagesByThread(threadId));
+    public ResponseEntity<MessagePageDTO> getMessagesByThread(@PathVariable UUID threadId,
+                                                              @RequestParam(required = false) String before,
+                                                              @RequestParam(required = false) String after,
+                                                              @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(messageService.getMessagePage(threadId, before, after, Math.max(1, Math.min(limit, MAX_LIMIT))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
 
@@ -0,0 +1,209 @@
+package com.weave.controller;
+
+import com.weave.dto.SendMessageRequest;
+import com.weave.dto.SendMessageResponse;
+import com.weave.realtime.PresenceStatus;
+import com.weave.realtime.RealtimeEvent;
+import com.weave.realtime.RealtimeSession;
+import com.weave.security.FirebaseAuthentication;
+import com.weave.service.MessageService;
+import com.weave.service.RealtimeNotificationService;
+import com.weave.service.ThreadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * WebSocket endpoint at /v1/ws: the same events as /v1/stream, plus client messages over
+ * the same connection so clients need no separate HTTP request per action.
+ *
+ * Query parameters at connect:
+ * - "encoding": "json" (default) for text envelopes {"id":"...","event":"...","data":{...}},
+ *   or "binary" for the compact frames described in {@link RealtimeEvent}
+ * - "lastEventId": resume point, as with SSE's Last-Event-ID header (also accepted)
+ *
+ * Client messages are JSON text frames with a "type" and an optional "requestId" echoed in the reply:
+ * - {"type":"send","message":{...SendMessageRequest...}} -> "ack" with the SendMessageResponse as "result"
+ * - {"type":"typing","threadId":"...","typing":true} -> "typing" event to the thread's participants
+ *   when the indicator appears or clears; repeat while the user types, send false when they stop
+ * - {"type":"presence","status":"online"|"away"} -> "presence" event in each of the user's threads
+ *   if it changed
+ * - {"type":"read","threadId":"..."} -> marks the thread read, then "ack"
+ * - {"type":"ping"} -> "pong"
+ * Failures are answered with an "error" event carrying "error".
+ */
+@Component
+public class RealtimeWebSocketHandler extends AbstractWebSocketHandler implements HandshakeInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(RealtimeWebSocketHandler.class);
+
+    private static final String AUTHENTICATION_ATTRIBUTE = "weave.authentication";
+    private static final String BINARY_ATTRIBUTE = "weave.binary";
+    private static final String LAST_EVENT_ID_ATTRIBUTE = "weave.lastEventId";
+    private static final String SESSION_ATTRIBUTE = "weave.session";
+
+    private final RealtimeNotificationService notificationService;
+    private final MessageService messageService;
+    private final ThreadService threadService;
+    private final ObjectMapper objectMapper;
+
+    public RealtimeWebSocketHandler(RealtimeNotificationService notificationService, MessageService messageService,
+                                    ThreadService threadService, ObjectMapper objectMapper) {
+        this.notificationService = notificationService;
+        this.messageService = messageService;
+        this.threadService = threadService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        // The upgrade request went through the security filter chain like any other
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof FirebaseAuthentication)) {
+            return false;
+        }
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        String lastEventId = request.getHeaders().getFirst("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = params.getFirst("lastEventId");
+        }
+        attributes.put(AUTHENTICATION_ATTRIBUTE, authentication);
+        attributes.put(BINARY_ATTRIBUTE, "binary".equalsIgnoreCase(params.getFirst("encoding")));
+        if (lastEventId != null) {
+            attributes.put(LAST_EVENT_ID_ATTRIBUTE, lastEventId);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession socket) {
+        FirebaseAuthentication authentication = (FirebaseAuthentication) socket.getAttributes().get(AUTHENTICATION_ATTRIBUTE);
+        RealtimeSession session = notificationService.openWebSocketSession(
+            authentication.getUser().getId(),
+            socket,
+            (Boolean) socket.getAttributes().get(BINARY_ATTRIBUTE),
+            (String) socket.getAttributes().get(LAST_EVENT_ID_ATTRIBUTE));
+        socket.getAttributes().put(SESSION_ATTRIBUTE, session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession socket, CloseStatus status) {
+        RealtimeSession session = sessionOf(socket);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession socket, Throwable exception) {
+        RealtimeSession session = sessionOf(socket);
+        if (session != null) {
+            session.closeWithError(exception);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession socket, TextMessage message) {
+        RealtimeSession session = sessionOf(socket);
+        if (session == null) {
+            return;
+        }
+
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (JacksonException e) {
+            reply(session, "error", null, Map.of("error", "Malformed JSON"));
+            return;
+        }
+        String requestId = frame.hasNonNull("requestId") ? frame.get("requestId").asString() : null;
+
+        // Services read the current user from the security context, as they do for HTTP requests
+        SecurityContextHolder.getContext().setAuthentication((Authentication) socket.getAttributes().get(AUTHENTICATION_ATTRIBUTE));
+        try {
+            switch (frame.path("type").asString()) {
+                case "send" -> {
+                    SendMessageRequest request = objectMapper.treeToValue(frame.path("message"), SendMessageRequest.class);
+                    if (request == null || request.getThreadId() == null || request.getType() == null || request.getType().isBlank()) {
+                        throw new IllegalArgumentException("message.threadId and message.type are required");
+                    }
+                    SendMessageResponse response = messageService.sendMessage(request);
+                    reply(session, "ack", requestId, Map.of("result", response));
+                }
+                // Fire and forget: a rate-limited update is simply not shown
+                case "typing" -> notificationService.updateTyping(participantThread(frame, session), session.getUserId(),
+                    frame.path("typing").asBoolean(true));
+                case "presence" -> notificationService.updatePresence(session.getUserId(),
+                    PresenceStatus.fromClient(frame.path("status").asString()));
+                case "read" -> {
+                    threadService.markThreadRead(participantThread(frame, session));
+                    reply(session, "ack", requestId, Map.of());
+                }
+                case "ping" -> reply(session, "pong", requestId, Map.of());
+                default -> throw new IllegalArgumentException("Unknown message type: " + frame.path("type").asString());
+            }
+        } catch (IllegalArgumentException | JacksonException e) {
+            reply(session, "error", requestId, Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            log.warn("WebSocket {} message from user {} failed: {}", frame.path("type").asString(), session.getUserId(), e.getMessage());
+            reply(session, "error", requestId, Map.of("error", e.getMessage() != null ? e.getMessage() : "Request failed"));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession socket, BinaryMessage message) {
+        RealtimeSession session = sessionOf(socket);
+        if (session != null) {
+            reply(session, "error", null, Map.of("error", "Client messages must be JSON text frames"));
+        }
+    }
+
+    private UUID participantThread(JsonNode frame, RealtimeSession session) {
+        UUID threadId = UUID.fromString(frame.path("threadId").asString());
+        if (!notificationService.isThreadSubscriber(threadId, session.getUserId())) {
+            throw new IllegalArgumentException("Not a participant of thread " + threadId);
+        }
+        return threadId;
+    }
+
+    private void reply(RealtimeSession session, String event, String requestId, Map<String, Object> data) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        if (requestId != null) {
+            payload.put("requestId", requestId);
+        }
+        payload.putAll(data);
+        // Through the session queue, so the drain task stays the socket's only writer
+        session.enqueue(RealtimeEvent.encode(event, payload, objectMapper));
+    }
+
+    private static RealtimeSession sessionOf(WebSocketSession socket) {
+        return (RealtimeSession) socket.getAttributes().get(SESSION_ATTRIBUTE);
+    }
+}
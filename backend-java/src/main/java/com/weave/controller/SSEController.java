@@ -1,12 +1,21 @@
 package com.weave.controller;
 
+import com.weave.model.User;
+import com.weave.realtime.PresenceStatus;
 import com.weave.service.RealtimeNotificationService;
+import com.weave.util.SecurityUtils;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller for Server-Sent Events (SSE) real-time updates.
@@ -30,12 +39,21 @@ public class SSEController {
      * - "message_created": Sent when a new message is created in a thread
      * - "entity_extracted": Sent when an entity is extracted from a message
      * - "thread_updated": Sent when a thread is updated (e.g., read status, title)
+     * - "typing": A participant's typing indicator appeared or cleared in a thread
+     * - "presence": A participant went online, away or offline, once per shared thread
      * 
+     * Every event except "connected", "typing" and "presence" has an ID; the latter two are
+     * transient and never replayed. A reconnecting client that sends the
+     * Last-Event-ID header (EventSource does this automatically) receives the events it
+     * missed right after "connected"; if they are no longer buffered, or the ID was issued by
+     * another server, "connected" carries resync: true and the client should reload its threads.
+     * 
+     * @param lastEventId ID of the last event received before the connection dropped
      * @return SseEmitter for the SSE connection
      */
     @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public ResponseEntity<SseEmitter> stream() {
-        SseEmitter emitter = notificationService.createConnection();
+    public ResponseEntity<SseEmitter> stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = notificationService.createConnection(lastEventId);
         
         // Set CORS headers if needed (should be handled by SecurityConfig, but ensure SSE works)
         return ResponseEntity.ok()
@@ -44,6 +62,57 @@ public class SSEController {
             .body(emitter);
     }
     
+    /**
+     * Same events and resume semantics as {@link #stream}, as a reactive stream.
+     * Delivery follows the client's demand, so a slow reader fills only its own bounded
+     * session queue, and an idle connection holds neither a thread nor buffered events.
+     * 
+     * @param lastEventId ID of the last event received before the connection dropped
+     * @return Server-sent events for the authenticated user
+     */
+    @GetMapping(value = "/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> reactiveStream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return notificationService.createReactiveConnection(lastEventId);
+    }
+    
+    /**
+     * Shows or clears the current user's typing indicator in a thread, for clients on SSE;
+     * WebSocket clients send a "typing" message instead. Repeat while the user types.
+     * @param threadId A thread the user participates in
+     * @param typing Whether the user is typing
+     * @return 202, or 429 if the user is sending typing and presence updates too fast
+     */
+    @PostMapping("/typing")
+    public ResponseEntity<Void> typing(@RequestParam UUID threadId, @RequestParam(defaultValue = "true") boolean typing) {
+        User currentUser = SecurityUtils.getCurrentUser()
+            .orElseThrow(() -> new RuntimeException("User not authenticated"));
+        if (!notificationService.isThreadSubscriber(threadId, currentUser.getId())) {
+            return ResponseEntity.badRequest().build();
+        }
+        return notificationService.updateTyping(threadId, currentUser.getId(), typing)
+            ? ResponseEntity.accepted().build()
+            : ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+    }
+    
+    /**
+     * Sets the current user's presence, for clients on SSE; WebSocket clients send a
+     * "presence" message instead. The user must have an open realtime connection.
+     * @param status "online" or "away"
+     * @return 202, or 429 if the user is sending typing and presence updates too fast
+     */
+    @PutMapping("/presence")
+    public ResponseEntity<Void> presence(@RequestParam String status) {
+        User currentUser = SecurityUtils.getCurrentUser()
+            .orElseThrow(() -> new RuntimeException("User not authenticated"));
+        try {
+            return notificationService.updatePresence(currentUser.getId(), PresenceStatus.fromClient(status))
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     /**
      * Health check endpoint for SSE service.
      * @return Status information about active connections
@@ -51,9 +120,18 @@ public class SSEController {
     @GetMapping("/status")
     public ResponseEntity<?> status() {
         int activeConnections = notificationService.getActiveConnectionCount();
+        Timer delivery = notificationService.getDeliveryTimer();
         return ResponseEntity.ok(Map.of(
             "status", "ok",
-            "activeConnections", activeConnections
+            "activeConnections", activeConnections,
+            "connectedUsers", notificationService.getConnectedUserCount(),
+            "queuedEvents", notificationService.getQueuedEventCount(),
+            "subscribedThreads", notificationService.getSubscribedThreadCount(),
+            "pendingCoalesced", notificationService.getPendingCoalescedCount(),
+            "reapedSessions", notificationService.getReapedSessionCount(),
+            "heartbeatsSent", notificationService.getHeartbeatCount(),
+            "deliveryMeanMillis", delivery.mean(TimeUnit.MILLISECONDS),
+            "deliveryMaxMillis", delivery.max(TimeUnit.MILLISECONDS)
         ));
     }
 }
@@ -1,31 +1,96 @@
 package com.weave.controller;
 
+import com.weave.dto.SearchPageDTO;
 import com.weave.dto.SearchResultDTO;
+import com.weave.dto.SuggestionDTO;
 import com.weave.service.SearchService;
+import com.weave.service.SuggestService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/v1/search")
 public class SearchController {
+    private static final int MAX_LIMIT = 200;
+    private static final int MAX_SUGGEST_LIMIT = 20;
+    private static final int MAX_STREAM_LIMIT = 10000;
+    
     private final SearchService searchService;
+    private final SuggestService suggestService;
+    private final ObjectMapper objectMapper;
 
-    public SearchController(SearchService searchService) {
+    public SearchController(SearchService searchService, SuggestService suggestService, ObjectMapper objectMapper) {
         this.searchService = searchService;
+        this.suggestService = suggestService;
+        this.objectMapper = objectMapper;
     }
     
     @GetMapping
-    public ResponseEntity<Map<String, Object>> search(@RequestParam String q) {
-        List<SearchResultDTO> results = searchService.search(q);
+    public ResponseEntity<Map<String, Object>> search(@RequestParam String q,
+                                                      @RequestParam(defaultValue = "50") int limit,
+                                                      @RequestParam(required = false) String cursor) {
+        SearchPageDTO page;
+        try {
+            page = searchService.search(q, Math.max(1, Math.min(limit, MAX_LIMIT)), cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("results", page.getResults());
+        response.put("query", q);
+        // Results on this page only; the full match count is never computed
+        response.put("count", page.getResults().size());
+        response.put("nextCursor", page.getNextCursor());
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Streams results as newline-delimited JSON, one result per line, best first.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSearch(@RequestParam String q,
+                                                              @RequestParam(defaultValue = "1000") int limit) {
+        List<UUID> threadScope = searchService.currentThreadScope();
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_STREAM_LIMIT));
+        
+        StreamingResponseBody body = out -> searchService.stream(q, threadScope, boundedLimit, page -> {
+            try {
+                for (SearchResultDTO result : page) {
+                    out.write(objectMapper.writeValueAsBytes(result));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+    
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(@RequestParam String q,
+                                                       @RequestParam(defaultValue = "10") int limit,
+                                                       @RequestParam(defaultValue = "false") boolean fuzzy) {
+        List<SuggestionDTO> suggestions = suggestService.suggest(q, fuzzy, Math.max(1, Math.min(limit, MAX_SUGGEST_LIMIT)));
         
         Map<String, Object> response = new HashMap<>();
-        response.put("results", results);
+        response.put("suggestions", suggestions);
         response.put("query", q);
-        response.put("total", results.size());
         
         return ResponseEntity.ok(response);
     }
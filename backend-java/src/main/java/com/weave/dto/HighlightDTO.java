@@ -0,0 +1,19 @@
+package com.weave.dto;
+
+public class HighlightDTO {
+    private final int start;
+    private final int end;
+
+    public HighlightDTO(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,37 @@
+package com.weave.dto;
+
+import java.util.List;
+
+public class MessagePageDTO {
+    private final List<MessageDTO> messages;
+    private final String olderCursor;
+    private final String newerCursor;
+
+    public MessagePageDTO(List<MessageDTO> messages, String olderCursor, String newerCursor) {
+        this.messages = messages;
+        this.olderCursor = olderCursor;
+        this.newerCursor = newerCursor;
+    }
+
+    /**
+     * @return The page, oldest first
+     */
+    public List<MessageDTO> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return Cursor to pass as {@code before} for the preceding page, or null at the start of the thread
+     */
+    public String getOlderCursor() {
+        return olderCursor;
+    }
+
+    /**
+     * @return Cursor to pass as {@code after} for the following page, or null if this page
+     *         reached the newest message
+     */
+    public String getNewerCursor() {
+        return newerCursor;
+    }
+}
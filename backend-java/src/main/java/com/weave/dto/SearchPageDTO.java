@@ -0,0 +1,21 @@
+package com.weave.dto;
+
+import java.util.List;
+
+public class SearchPageDTO {
+    private final List<SearchResultDTO> results;
+    private final String nextCursor;
+
+    public SearchPageDTO(List<SearchResultDTO> results, String nextCursor) {
+        this.results = results;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<SearchResultDTO> getResults() {
+        return results;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
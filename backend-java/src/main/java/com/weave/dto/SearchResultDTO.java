@@ -1,6 +1,7 @@
 package com.weave.dto;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 public class SearchResultDTO {
@@ -14,8 +15,9 @@ public class SearchResultDTO {
     private final UUID sourceMessageId;
     private final UUID entityId;
     private final Instant timestamp;
+    private final List<HighlightDTO> highlights;
 
-    public SearchResultDTO(UUID id, String type, String title, String snippet, Double confidence, String whyReturned, UUID sourceThreadId, UUID sourceMessageId, UUID entityId, Instant timestamp) {
+    public SearchResultDTO(UUID id, String type, String title, String snippet, Double confidence, String whyReturned, UUID sourceThreadId, UUID sourceMessageId, UUID entityId, Instant timestamp, List<HighlightDTO> highlights) {
         this.id = id;
         this.type = type;
         this.title = title;
@@ -26,6 +28,7 @@ public class SearchResultDTO {
         this.sourceMessageId = sourceMessageId;
         this.entityId = entityId;
         this.timestamp = timestamp;
+        this.highlights = highlights;
     }
 
     public UUID getId() {
@@ -67,4 +70,11 @@ public class SearchResultDTO {
     public Instant getTimestamp() {
         return timestamp;
     }
+
+    /**
+     * Matched ranges within the snippet, as character offsets.
+     */
+    public List<HighlightDTO> getHighlights() {
+        return highlights;
+    }
 }
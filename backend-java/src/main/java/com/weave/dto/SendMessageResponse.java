@@ -17,6 +17,11 @@ public class SendMessageResponse {
         return message;
     }
 
+    /**
+     * Always empty: entities are extracted in the background after the message is saved and
+     * reach clients through the {@code entity_extracted} realtime event. Kept so existing
+     * clients that read the field still get a list.
+     */
     public List<ExtractedEntityDTO> getExtractedEntities() {
         return extractedEntities;
     }
@@ -0,0 +1,33 @@
+package com.weave.dto;
+
+import java.util.UUID;
+
+public class SuggestionDTO {
+    private final UUID id;
+    private final String type;
+    private final String label;
+    private final UUID threadId;
+
+    public SuggestionDTO(UUID id, String type, String label, UUID threadId) {
+        this.id = id;
+        this.type = type;
+        this.label = label;
+        this.threadId = threadId;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+}
@@ -11,7 +11,9 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_thread_timestamp_id", columnList = "thread_id, timestamp, id")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -0,0 +1,74 @@
+package com.weave.realtime;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Holds back items produced inside a transaction and hands them over in one batch once it
+ * commits, or drops them if it rolls back. Outside a transaction an item is handed over
+ * immediately on its own.
+ * <p>
+ * The batch is bound to the transaction like a connection, so every call made on the
+ * transaction's thread lands in the same batch. An item added after the batch has been
+ * flushed, from another after-commit callback of the same transaction, is handed over
+ * immediately since no later callback would see it.
+ */
+public class AfterCommitBatcher<T> {
+    private final Object resourceKey = new Object();
+    private final Consumer<List<T>> flush;
+
+    private static final class Batch<T> {
+        private final List<T> items = new ArrayList<>();
+        private boolean flushed;
+    }
+
+    /**
+     * @param flush Receives each batch in the order its items were added; called on the
+     *              committing thread, after the commit
+     */
+    public AfterCommitBatcher(Consumer<List<T>> flush) {
+        this.flush = flush;
+    }
+
+    public void add(T item) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            flush.accept(List.of(item));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Batch<T> batch = (Batch<T>) TransactionSynchronizationManager.getResource(resourceKey);
+        if (batch == null) {
+            batch = open();
+        }
+        if (batch.flushed) {
+            flush.accept(List.of(item));
+        } else {
+            batch.items.add(item);
+        }
+    }
+
+    private Batch<T> open() {
+        Batch<T> batch = new Batch<>();
+        TransactionSynchronizationManager.bindResource(resourceKey, batch);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                batch.flushed = true;
+                if (!batch.items.isEmpty()) {
+                    flush.accept(List.copyOf(batch.items));
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+            }
+        });
+        return batch;
+    }
+}
@@ -0,0 +1,141 @@
+package com.weave.realtime;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * One realtime fan-out request as it travels between nodes on the {@link EventBus}.
+ * <p>
+ * The event payload is carried as the UTF-8 JSON already produced by the publisher, so it
+ * is serialized once cluster-wide. The wire form is five {@code |}-separated header fields
+ * followed by the raw payload: {@code kind|origin|target|user|event|data}.
+ */
+public final class BusMessage {
+    private static final char SEPARATOR = '|';
+    private static final int HEADER_FIELDS = 5;
+
+    public enum Kind {
+        /** Deliver an event to one user's sessions; {@code target} is the user. */
+        USER,
+        /** Deliver an event to the subscribers of a thread; {@code target} is the thread. */
+        THREAD,
+        /** Deliver an event to every connected user. */
+        BROADCAST,
+        /**
+         * Deliver a transient event, such as typing or presence, to the subscribers of a thread
+         * without an ID or replay buffering; {@code target} is the thread.
+         */
+        EPHEMERAL,
+        /** {@code user} joined thread {@code target}. */
+        PARTICIPANT_ADDED,
+        /** {@code user} left thread {@code target}. */
+        PARTICIPANT_REMOVED,
+        /** {@code user}'s thread memberships changed in ways that need a reload. */
+        SUBSCRIPTIONS_CHANGED
+    }
+
+    private final Kind kind;
+    private final UUID origin;
+    private final UUID target;
+    private final UUID userId;
+    private final String eventName;
+    private final byte[] data;
+
+    private BusMessage(Kind kind, UUID origin, UUID target, UUID userId, String eventName, byte[] data) {
+        this.kind = kind;
+        this.origin = origin;
+        this.target = target;
+        this.userId = userId;
+        this.eventName = eventName;
+        this.data = data;
+    }
+
+    /**
+     * @param target The user for {@link Kind#USER}, the thread for {@link Kind#THREAD} and
+     *               {@link Kind#EPHEMERAL}, null for broadcasts
+     * @param data Single-line UTF-8 JSON payload
+     */
+    public static BusMessage event(Kind kind, UUID origin, UUID target, String eventName, byte[] data) {
+        if (eventName.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Event name must not contain '" + SEPARATOR + "': " + eventName);
+        }
+        return new BusMessage(kind, origin, target, null, eventName, data);
+    }
+
+    /**
+     * @param threadId The thread joined or left, or null for {@link Kind#SUBSCRIPTIONS_CHANGED}
+     */
+    public static BusMessage membership(Kind kind, UUID origin, UUID threadId, UUID userId) {
+        return new BusMessage(kind, origin, threadId, userId, "", new byte[0]);
+    }
+
+    public byte[] encode() {
+        byte[] header = (kind.name() + SEPARATOR + origin + SEPARATOR + format(target) + SEPARATOR
+            + format(userId) + SEPARATOR + eventName + SEPARATOR).getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = Arrays.copyOf(header, header.length + data.length);
+        System.arraycopy(data, 0, bytes, header.length, data.length);
+        return bytes;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the bytes are not an encoded message
+     */
+    public static BusMessage decode(byte[] bytes) {
+        int[] separators = new int[HEADER_FIELDS];
+        int found = 0;
+        for (int i = 0; i < bytes.length && found < HEADER_FIELDS; i++) {
+            if (bytes[i] == SEPARATOR) {
+                separators[found++] = i;
+            }
+        }
+        if (found < HEADER_FIELDS) {
+            throw new IllegalArgumentException("Malformed bus message");
+        }
+        String[] fields = new String[HEADER_FIELDS];
+        for (int i = 0, start = 0; i < HEADER_FIELDS; start = separators[i++] + 1) {
+            fields[i] = new String(bytes, start, separators[i] - start, StandardCharsets.UTF_8);
+        }
+        try {
+            return new BusMessage(Kind.valueOf(fields[0]), UUID.fromString(fields[1]), parse(fields[2]),
+                parse(fields[3]), fields[4], Arrays.copyOfRange(bytes, separators[HEADER_FIELDS - 1] + 1, bytes.length));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed bus message", e);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The node that published the message
+     */
+    public UUID getOrigin() {
+        return origin;
+    }
+
+    public UUID getTarget() {
+        return target;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    private static String format(UUID id) {
+        return id != null ? id.toString() : "";
+    }
+
+    private static UUID parse(String field) {
+        return field.isEmpty() ? null : UUID.fromString(field);
+    }
+}
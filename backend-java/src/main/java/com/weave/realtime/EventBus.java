@@ -0,0 +1,30 @@
+package com.weave.realtime;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries realtime fan-out requests between backend nodes so each node can deliver to the
+ * SSE sessions it holds.
+ * <p>
+ * A message is delivered to the listeners of every node, possibly including the publisher;
+ * receivers skip messages whose origin is their own node, which has already delivered locally.
+ */
+public interface EventBus {
+    default void publish(BusMessage message) {
+        publishAll(List.of(message));
+    }
+
+    /**
+     * Publishes messages in order, as one batch where the transport allows.
+     * @throws IllegalStateException If the batch could not be published; the caller may retry
+     *                               it, so receivers can see a message more than once
+     */
+    void publishAll(List<BusMessage> messages);
+
+    /**
+     * Registers a listener for messages from all nodes. Listeners run on the bus's thread and
+     * must not block.
+     */
+    void subscribe(Consumer<BusMessage> listener);
+}
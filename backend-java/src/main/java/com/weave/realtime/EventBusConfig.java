@@ -0,0 +1,45 @@
+package com.weave.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Chooses the {@link EventBus} from {@code weave.realtime.bus}: {@code postgres} (the default)
+ * uses LISTEN/NOTIFY when the datasource is PostgreSQL and otherwise falls back to the
+ * in-memory bus, which is also what {@code memory} selects.
+ */
+@Configuration
+public class EventBusConfig {
+    private static final Logger log = LoggerFactory.getLogger(EventBusConfig.class);
+
+    @Bean
+    public EventBus eventBus(DataSource dataSource, @Value("${weave.realtime.bus:postgres}") String bus) {
+        switch (bus.toLowerCase()) {
+            case "postgres":
+                if (isPostgres(dataSource)) {
+                    return new PostgresEventBus(dataSource);
+                }
+                log.info("Datasource is not PostgreSQL; realtime events are delivered on this node only");
+                return new InMemoryEventBus();
+            case "memory":
+                return new InMemoryEventBus();
+            default:
+                throw new IllegalStateException("Unknown weave.realtime.bus: " + bus);
+        }
+    }
+
+    private static boolean isPostgres(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to inspect the datasource for the realtime event bus", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.weave.realtime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Merges bursts of updates for the same key into one, delivering only the latest value
+ * once per window.
+ * <p>
+ * The first submission for a key opens a window; later submissions inside it replace the
+ * pending value, and when the window closes the value present at that moment is handed to
+ * the sink. A submission racing with the flush either replaces the value just before it is
+ * taken or opens a new window, so the latest value is never lost.
+ */
+public class EventCoalescer<K, V> {
+    private final Map<K, V> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+    private final BiConsumer<K, V> sink;
+
+    /**
+     * @param scheduler Runs the sink when a window closes
+     * @param sink Receives the latest value for a key; must not throw
+     */
+    public EventCoalescer(ScheduledExecutorService scheduler, long windowMillis, BiConsumer<K, V> sink) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive: " + windowMillis);
+        }
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.sink = sink;
+    }
+
+    public void submit(K key, V value) {
+        if (pending.put(key, value) == null) {
+            scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return Keys with a value waiting for their window to close
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void flush(K key) {
+        V latest = pending.remove(key);
+        if (latest != null) {
+            sink.accept(key, latest);
+        }
+    }
+}
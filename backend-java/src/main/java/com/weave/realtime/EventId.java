@@ -0,0 +1,55 @@
+package com.weave.realtime;
+
+/**
+ * ID of a replayable event as sent to clients: {@code <epoch>:<sequence>}.
+ * <p>
+ * Sequences are only comparable within the node process that issued them, so each process
+ * picks a fresh epoch and a client resuming with an ID from another epoch (another replica,
+ * or this one before a restart) has to resynchronize.
+ */
+public final class EventId {
+    private static final char SEPARATOR = ':';
+
+    private final String epoch;
+    private final long sequence;
+
+    public EventId(String epoch, long sequence) {
+        if (epoch.isEmpty() || epoch.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid event ID epoch: " + epoch);
+        }
+        this.epoch = epoch;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The ID, or null if the text is not one this server issued
+     */
+    public static EventId parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String trimmed = text.trim();
+        int separator = trimmed.lastIndexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return new EventId(trimmed.substring(0, separator), Long.parseLong(trimmed.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return epoch + SEPARATOR + sequence;
+    }
+}
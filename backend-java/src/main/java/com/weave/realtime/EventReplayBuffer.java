@@ -0,0 +1,86 @@
+package com.weave.realtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring of the most recent events sent to one user, kept so a client that reconnects with
+ * a {@code Last-Event-ID} gets only what it missed instead of reloading its threads.
+ * <p>
+ * The buffer also tracks a floor: the highest event sequence that may have been lost, either
+ * because it was overwritten or because it was sent before the buffer existed. A resume
+ * from below the floor cannot be served and the client has to resynchronize.
+ * <p>
+ * Callers that must order a replay against live sends hold the buffer's monitor around both.
+ */
+public class EventReplayBuffer {
+    private final RealtimeEvent[] ring;
+    private int head;
+    private int size;
+    private long floor;
+    private long idleSince;
+    private boolean retired;
+
+    /**
+     * @param floor Last event sequence issued before this buffer started recording
+     */
+    public EventReplayBuffer(int capacity, long floor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.ring = new RealtimeEvent[capacity];
+        this.floor = floor;
+    }
+
+    public synchronized void append(RealtimeEvent event) {
+        RealtimeEvent overwritten = ring[head];
+        if (size == ring.length) {
+            floor = Math.max(floor, overwritten.getSequence());
+        } else {
+            size++;
+        }
+        ring[head] = event;
+        head = (head + 1) % ring.length;
+    }
+
+    /**
+     * @param lastSequence Sequence of the last event the client received, from this node's epoch
+     * @return Buffered events with a later sequence, oldest first, or null if events after
+     *         {@code lastSequence} may already have been dropped
+     */
+    public synchronized List<RealtimeEvent> since(long lastSequence) {
+        if (lastSequence < floor) {
+            return null;
+        }
+        List<RealtimeEvent> missed = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            RealtimeEvent event = ring[(head - size + i + ring.length) % ring.length];
+            if (event.getSequence() > lastSequence) {
+                missed.add(event);
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Records when the user's last session closed, or 0 while they have one open.
+     */
+    public synchronized void setIdleSince(long idleSince) {
+        this.idleSince = idleSince;
+    }
+
+    public synchronized long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * Marks the buffer as discarded; a caller that raced with its removal must fetch a new one.
+     */
+    public synchronized void retire() {
+        retired = true;
+    }
+
+    public synchronized boolean isRetired() {
+        return retired;
+    }
+}
@@ -0,0 +1,91 @@
+package com.weave.realtime;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory state whose entries lapse unless refreshed within a fixed time to live, for
+ * short-lived signals such as typing indicators and presence that are never persisted.
+ * <p>
+ * Lapsed entries are not removed on their own; {@link #expire} removes them and returns
+ * them so the caller can announce the change. Until then they read as absent. An entry
+ * refreshed or replaced concurrently with {@link #expire} is kept.
+ */
+public class ExpiringState<K, V> {
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    public ExpiringState(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return The live value, or null if there is none or it has lapsed
+     */
+    public V get(K key, long now) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && entry.expiresAt() > now ? entry.value() : null;
+    }
+
+    /**
+     * Sets the value and starts a new time to live.
+     * @return The previous live value, or null if there was none
+     */
+    public V put(K key, V value, long now) {
+        Entry<V> previous = entries.put(key, new Entry<>(value, now + ttlMillis));
+        return previous != null && previous.expiresAt() > now ? previous.value() : null;
+    }
+
+    /**
+     * Extends a live entry by a new time to live.
+     * @return Whether the entry was live and has been extended
+     */
+    public boolean refresh(K key, long now) {
+        boolean[] refreshed = new boolean[1];
+        entries.computeIfPresent(key, (k, entry) -> {
+            if (entry.expiresAt() <= now) {
+                return entry;
+            }
+            refreshed[0] = true;
+            return new Entry<>(entry.value(), now + ttlMillis);
+        });
+        return refreshed[0];
+    }
+
+    /**
+     * @return The removed value, lapsed or not, or null if there was none; a lapsed value has
+     *         not been returned by {@link #expire} yet, so the caller still has to announce it
+     */
+    public V remove(K key) {
+        Entry<V> previous = entries.remove(key);
+        return previous != null ? previous.value() : null;
+    }
+
+    /**
+     * Removes every lapsed entry.
+     * @return The removed entries
+     */
+    public Map<K, V> expire(long now) {
+        Map<K, V> expired = new HashMap<>();
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt() <= now && entries.remove(key, entry)) {
+                expired.put(key, entry.value());
+            }
+        });
+        return expired;
+    }
+
+    /**
+     * @return Entries held, including lapsed ones not yet expired
+     */
+    public int size() {
+        return entries.size();
+    }
+}
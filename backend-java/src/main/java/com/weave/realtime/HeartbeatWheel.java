@@ -0,0 +1,55 @@
+package com.weave.realtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timer wheel that spreads periodic per-session checks over one shared tick.
+ * <p>
+ * Sessions are hashed into a fixed number of slots and each tick visits the next slot, so
+ * with N slots and a tick of interval/N every session is visited once per interval while
+ * the work, and the heartbeat writes it causes, is spread evenly instead of arriving in
+ * one burst. No session has a timer of its own.
+ */
+public class HeartbeatWheel {
+    private final List<Set<RealtimeSession>> slots;
+    private int cursor;
+
+    public HeartbeatWheel(int slotCount) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+        }
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public void add(RealtimeSession session) {
+        slotOf(session).add(session);
+    }
+
+    public void remove(RealtimeSession session) {
+        slotOf(session).remove(session);
+    }
+
+    /**
+     * Moves to the next slot. Called from a single timer thread.
+     * @return The sessions in that slot
+     */
+    public List<RealtimeSession> advance() {
+        Set<RealtimeSession> slot = slots.get(cursor);
+        cursor = (cursor + 1) % slots.size();
+        return List.copyOf(slot);
+    }
+
+    public int size() {
+        return slots.stream().mapToInt(Set::size).sum();
+    }
+
+    private Set<RealtimeSession> slotOf(RealtimeSession session) {
+        return slots.get(Math.floorMod(session.getId().hashCode(), slots.size()));
+    }
+}
@@ -0,0 +1,24 @@
+package com.weave.realtime;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link EventBus} within one JVM, for single-node deployments and databases without
+ * LISTEN/NOTIFY. Sharing one instance between several notification services simulates a
+ * cluster in tests.
+ */
+public class InMemoryEventBus implements EventBus {
+    private final List<Consumer<BusMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publishAll(List<BusMessage> messages) {
+        messages.forEach(message -> listeners.forEach(listener -> listener.accept(message)));
+    }
+
+    @Override
+    public void subscribe(Consumer<BusMessage> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,205 @@
+package com.weave.realtime;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link EventBus} over Postgres {@code LISTEN/NOTIFY}, so replicas share realtime events
+ * through the database they already use.
+ * <p>
+ * Notifications are published on a pooled connection of their own, independent of any
+ * surrounding transaction, so other nodes see an event when this node delivers it. A batch
+ * is sent in one transaction with a single {@code pg_notify} statement, so it reaches other
+ * nodes all at once or, if publishing fails, not at all.
+ * Payloads too large for {@code NOTIFY} (8000 bytes) are stored in
+ * {@code realtime_event_payloads}, created by migration V4, and the notification carries
+ * only their key; the bus refuses to start without that table. One
+ * connection per node stays checked out to LISTEN; if it drops it is reopened, and
+ * notifications sent in the gap are lost, so affected clients see a later resync.
+ */
+public class PostgresEventBus implements EventBus, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PostgresEventBus.class);
+
+    static final String CHANNEL = "weave_realtime";
+    // NOTIFY rejects payloads of 8000 bytes or more
+    private static final int MAX_NOTIFY_BYTES = 7900;
+    private static final String REFERENCE_PREFIX = "ref:";
+    private static final long PAYLOAD_RETENTION_MILLIS = 5 * 60 * 1000L;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final List<Consumer<BusMessage>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread listenerThread;
+    private volatile boolean running = true;
+
+    public PostgresEventBus(DataSource dataSource) {
+        this.dataSource = dataSource;
+        // The schema belongs to the migrations; check for it now rather than on the first large event
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeQuery("SELECT 1 FROM realtime_event_payloads WHERE FALSE").close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Table realtime_event_payloads is missing; apply migration "
+                + "V4__Add_realtime_event_payloads.sql (FLYWAY_ENABLED=true) or set REALTIME_BUS=memory", e);
+        }
+        this.listenerThread = Thread.ofPlatform().daemon().name("realtime-bus-listener").start(this::listen);
+    }
+
+    @Override
+    public void publishAll(List<BusMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<String> payloads = new ArrayList<>(messages.size());
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO realtime_event_payloads (id, payload) VALUES (?, ?)")) {
+                    boolean oversized = false;
+                    for (BusMessage message : messages) {
+                        byte[] bytes = message.encode();
+                        String payload = new String(bytes, StandardCharsets.UTF_8);
+                        if (bytes.length > MAX_NOTIFY_BYTES) {
+                            UUID id = UUID.randomUUID();
+                            insert.setObject(1, id);
+                            insert.setString(2, payload);
+                            insert.addBatch();
+                            oversized = true;
+                            payload = REFERENCE_PREFIX + id;
+                        }
+                        payloads.add(payload);
+                    }
+                    if (oversized) {
+                        insert.executeBatch();
+                    }
+                }
+                // Notifications are queued in order and sent when the transaction commits
+                Array array = connection.createArrayOf("text", payloads.toArray());
+                try (PreparedStatement notify = connection.prepareStatement(
+                        "SELECT pg_notify(?, payload) FROM unnest(?::text[]) WITH ORDINALITY AS p(payload, n) ORDER BY n")) {
+                    notify.setString(1, CHANNEL);
+                    notify.setArray(2, array);
+                    notify.execute();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to publish " + messages.size() + " realtime events to other nodes", e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<BusMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        listenerThread.interrupt();
+        try {
+            listenerThread.join(POLL_TIMEOUT_MILLIS * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listen() {
+        long lastCleanup = 0;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for realtime events on channel {}", CHANNEL);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(connection, notification.getParameter());
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastCleanup > PAYLOAD_RETENTION_MILLIS) {
+                        deleteExpiredPayloads(connection);
+                        lastCleanup = now;
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Realtime event listener lost its connection, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(Connection connection, String payload) throws SQLException {
+        if (payload.startsWith(REFERENCE_PREFIX)) {
+            payload = loadPayload(connection, UUID.fromString(payload.substring(REFERENCE_PREFIX.length())));
+            if (payload == null) {
+                log.warn("Realtime event payload expired before it was read");
+                return;
+            }
+        }
+        BusMessage message;
+        try {
+            message = BusMessage.decode(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed realtime bus message: {}", e.getMessage());
+            return;
+        }
+        for (Consumer<BusMessage> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                log.error("Realtime bus listener failed for {} message", message.getKind(), e);
+            }
+        }
+    }
+
+    private String loadPayload(Connection connection, UUID id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT payload FROM realtime_event_payloads WHERE id = ?")) {
+            select.setObject(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? rows.getString(1) : null;
+            }
+        }
+    }
+
+    private void deleteExpiredPayloads(Connection connection) throws SQLException {
+        try (Statement delete = connection.createStatement()) {
+            delete.executeUpdate("DELETE FROM realtime_event_payloads " +
+                "WHERE created_at < CURRENT_TIMESTAMP - INTERVAL '" + PAYLOAD_RETENTION_MILLIS / 1000 + " seconds'");
+        }
+    }
+}
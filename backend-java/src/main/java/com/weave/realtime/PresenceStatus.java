@@ -0,0 +1,28 @@
+package com.weave.realtime;
+
+/**
+ * A user's presence as shown to the participants of their threads. Clients choose between
+ * {@link #ONLINE} and {@link #AWAY}; {@link #OFFLINE} is only reached by disconnecting.
+ */
+public enum PresenceStatus {
+    ONLINE, AWAY, OFFLINE;
+
+    /**
+     * @return The status named by a client, case-insensitively
+     * @throws IllegalArgumentException If the name is unknown or not one clients may choose
+     */
+    public static PresenceStatus fromClient(String name) {
+        PresenceStatus status = valueOf(name.trim().toUpperCase());
+        if (status == OFFLINE) {
+            throw new IllegalArgumentException("Presence becomes offline by disconnecting");
+        }
+        return status;
+    }
+
+    /**
+     * @return The status as sent in events
+     */
+    public String label() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,74 @@
+package com.weave.realtime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-key token bucket. Each key may take up to {@code burst} permits at once and regains
+ * them at {@code permitsPerSecond}. Keys are tracked only while their bucket is below full,
+ * so memory follows the number of recently active keys.
+ */
+public class RateLimiter<K> {
+    private final Map<K, Bucket> buckets = new ConcurrentHashMap<>();
+    private final double permitsPerMilli;
+    private final int burst;
+
+    private static final class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.permitsPerMilli = permitsPerSecond / 1000;
+        this.burst = burst;
+    }
+
+    /**
+     * Takes one permit for the key if one is available.
+     * @return Whether the permit was granted
+     */
+    public boolean tryAcquire(K key, long now) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        synchronized (bucket) {
+            refill(bucket, now);
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens--;
+            return true;
+        }
+    }
+
+    /**
+     * Forgets keys whose bucket has refilled, since a new bucket behaves the same.
+     */
+    public void evictIdle(long now) {
+        // A permit taken from a bucket while it is being evicted is lost; it was full anyway
+        buckets.entrySet().removeIf(entry -> {
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                refill(bucket, now);
+                return bucket.tokens >= burst;
+            }
+        });
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private void refill(Bucket bucket, long now) {
+        if (now > bucket.updatedAt) {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updatedAt) * permitsPerMilli);
+            bucket.updatedAt = now;
+        }
+    }
+}
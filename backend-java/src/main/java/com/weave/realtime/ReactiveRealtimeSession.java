@@ -0,0 +1,121 @@
+package com.weave.realtime;
+
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Realtime session exposed as a {@link Flux} of server-sent events.
+ * <p>
+ * Writes honor the subscriber's demand: the drain task waits (on its virtual thread) until
+ * the transport requests more, so a slow client backs events up into the session's bounded
+ * queue, where the overflow policy applies, instead of into an unbounded reactive buffer.
+ * An idle session holds no thread and no buffered events.
+ */
+public class ReactiveRealtimeSession extends RealtimeSession {
+    private static final long DEMAND_POLL_SECONDS = 1;
+    // Far more than a queue's worth; demand beyond it waits in deferredDemand
+    private static final int MAX_PERMITS = 1 << 20;
+
+    private final Semaphore demand = new Semaphore(0);
+    // Requested but not yet released as permits, saturating at Long.MAX_VALUE
+    private final AtomicLong deferredDemand = new AtomicLong();
+    private final Flux<ServerSentEvent<String>> events;
+    private volatile boolean unbounded;
+    private volatile FluxSink<ServerSentEvent<String>> sink;
+
+    public ReactiveRealtimeSession(UUID userId, int queueCapacity, OverflowPolicy overflowPolicy,
+                                   Executor dispatcher, Consumer<RealtimeSession> onClosed) {
+        super(userId, queueCapacity, overflowPolicy, dispatcher, onClosed);
+        this.events = Flux.create(emitter -> {
+            // Set before requesting, since demand releases the drain task, which writes to it
+            sink = emitter;
+            emitter.onDispose(this::close);
+            emitter.onRequest(this::request);
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    /**
+     * @return The events of this session; subscribe once
+     */
+    public Flux<ServerSentEvent<String>> getEvents() {
+        return events;
+    }
+
+    @Override
+    protected void write(RealtimeEvent event) throws IOException {
+        try {
+            while (!unbounded && !demand.tryAcquire(DEMAND_POLL_SECONDS, TimeUnit.SECONDS)) {
+                if (isClosed()) {
+                    throw new IOException("Session closed while waiting for demand");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for demand", e);
+        }
+        if (deferredDemand.get() > 0) {
+            releaseDemand();
+        }
+        if (event.isHeartbeat()) {
+            sink.next(ServerSentEvent.<String>builder().comment("").build());
+            return;
+        }
+        ServerSentEvent.Builder<String> builder = ServerSentEvent.<String>builder()
+            .event(event.getName())
+            .data(event.getDataString());
+        if (event.getId() != null) {
+            builder.id(event.getId().toString());
+        }
+        sink.next(builder.build());
+    }
+
+    @Override
+    protected void complete(Throwable error) {
+        FluxSink<ServerSentEvent<String>> current = sink;
+        if (current == null) {
+            return;
+        }
+        if (error != null) {
+            current.error(error);
+        } else {
+            current.complete();
+        }
+    }
+
+    private void request(long n) {
+        if (n == Long.MAX_VALUE) {
+            unbounded = true;
+            demand.release();
+            return;
+        }
+        deferredDemand.accumulateAndGet(n, (total, more) -> total + more < 0 ? Long.MAX_VALUE : total + more);
+        releaseDemand();
+    }
+
+    /**
+     * Moves deferred demand into permits, keeping at most about {@link #MAX_PERMITS} available so
+     * the semaphore's int count cannot overflow however much the subscriber requests in total.
+     * Called by both the subscriber and the drain task; each overshoots the cap by at most its
+     * own release.
+     */
+    private void releaseDemand() {
+        int headroom = MAX_PERMITS - demand.availablePermits();
+        if (headroom <= 0) {
+            return;
+        }
+        long before = deferredDemand.getAndUpdate(deferred -> deferred - Math.min(deferred, headroom));
+        int released = (int) Math.min(before, headroom);
+        if (released > 0) {
+            demand.release(released);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.weave.realtime;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * A realtime event encoded once, up front, and shared by every recipient.
+ * <p>
+ * The payload is serialized to JSON a single time and the complete SSE frame
+ * ({@code event:} and {@code data:} lines plus the terminating blank line) is kept as
+ * UTF-8 bytes, so fanning an event out to N sessions writes the same buffer N times
+ * instead of serializing the DTOs N times.
+ * <p>
+ * Events delivered to subscribers carry an {@link EventId}, increasing in send order, which
+ * the client echoes back as {@code Last-Event-ID} when it reconnects. An event without an
+ * ID is not replayable and its frame has no {@code id:} line.
+ * <p>
+ * WebSocket clients get the same event in one of two framings, each built on first use and
+ * then shared: a JSON text envelope {@code {"id":"epoch:1","event":"name","data":{...}}}
+ * (without {@code id} when there is none), or a compact binary frame laid out as
+ * <pre>
+ *   byte    version ({@value #BINARY_VERSION})
+ *   short   length of the ID in ASCII bytes, 0 when there is none
+ *   bytes   id
+ *   short   length of the event name in UTF-8 bytes
+ *   bytes   event name
+ *   bytes   data as UTF-8 JSON, to the end of the frame
+ * </pre>
+ */
+public final class RealtimeEvent {
+    public static final byte BINARY_VERSION = 2;
+
+    private static final RealtimeEvent HEARTBEAT = new RealtimeEvent();
+
+    private final EventId id;
+    private final String name;
+    private final byte[] data;
+    private final long createdAtNanos;
+    private final Set<ResponseBodyEmitter.DataWithMediaType> frame;
+    private volatile String dataString;
+    private volatile byte[] jsonEnvelope;
+    private volatile byte[] binaryFrame;
+
+    private RealtimeEvent(EventId id, String name, byte[] data) {
+        this.id = id;
+        this.name = name;
+        this.data = data;
+        this.createdAtNanos = System.nanoTime();
+        String fields = (id != null ? "id:" + id + "\n" : "") + "event:" + name + "\ndata:";
+        byte[] header = fields.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[header.length + data.length + 2];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(data, 0, bytes, header.length, data.length);
+        bytes[bytes.length - 2] = '\n';
+        bytes[bytes.length - 1] = '\n';
+        this.frame = Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN));
+    }
+
+    /**
+     * Keep-alive with no event: an SSE comment line, or a ping for WebSocket clients.
+     */
+    private RealtimeEvent() {
+        this.id = null;
+        this.name = "";
+        this.data = new byte[0];
+        this.createdAtNanos = 0;
+        this.frame = Set.of(new ResponseBodyEmitter.DataWithMediaType(":\n\n".getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN));
+    }
+
+    /**
+     * @return The shared keep-alive; never buffered for replay
+     */
+    public static RealtimeEvent heartbeat() {
+        return HEARTBEAT;
+    }
+
+    public boolean isHeartbeat() {
+        return this == HEARTBEAT;
+    }
+
+    /**
+     * Encodes an event without an ID, for session-local events such as {@code connected}.
+     */
+    public static RealtimeEvent encode(String name, Object payload, ObjectMapper objectMapper) {
+        return encode(null, name, payload, objectMapper);
+    }
+
+    /**
+     * Serializes the payload as compact single-line JSON, which is always a valid SSE data line.
+     * @param id The event's ID, or null if it is not replayable
+     */
+    public static RealtimeEvent encode(EventId id, String name, Object payload, ObjectMapper objectMapper) {
+        return of(id, name, objectMapper.writeValueAsBytes(payload));
+    }
+
+    /**
+     * Wraps a payload that is already single-line UTF-8 JSON, such as one received from another node.
+     * @param id The event's ID, or null if it is not replayable
+     */
+    public static RealtimeEvent of(EventId id, String name, byte[] data) {
+        if (!name.chars().allMatch(c -> c > ' ' && c < 0x7f && c != '"' && c != '\\')) {
+            throw new IllegalArgumentException("Event name must be printable ASCII without quotes: " + name);
+        }
+        return new RealtimeEvent(id, name, data);
+    }
+
+    /**
+     * @return The event's ID, or null if it is not replayable
+     */
+    public EventId getId() {
+        return id;
+    }
+
+    /**
+     * @return The sequence part of the ID, or 0 if there is none
+     */
+    public long getSequence() {
+        return id != null ? id.getSequence() : 0;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the event was encoded, for delivery latency
+     */
+    public long getCreatedAtNanos() {
+        return createdAtNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The payload as UTF-8 JSON; shared, so callers must not modify it
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return The payload as a JSON string, decoded once and shared, for APIs that take text
+     */
+    public String getDataString() {
+        String text = dataString;
+        if (text == null) {
+            text = new String(data, StandardCharsets.UTF_8);
+            dataString = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return The full SSE frame, ready for {@link ResponseBodyEmitter#send(Set)}
+     */
+    public Set<ResponseBodyEmitter.DataWithMediaType> getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return The JSON text envelope for WebSocket clients, as UTF-8
+     */
+    public byte[] getJsonEnvelope() {
+        byte[] envelope = jsonEnvelope;
+        if (envelope == null) {
+            // Event names are code constants; a JSON string needs no escaping for them
+            String prefix = "{" + (id != null ? "\"id\":\"" + id + "\"," : "") + "\"event\":\"" + name + "\",\"data\":";
+            byte[] header = prefix.getBytes(StandardCharsets.UTF_8);
+            envelope = new byte[header.length + data.length + 1];
+            System.arraycopy(header, 0, envelope, 0, header.length);
+            System.arraycopy(data, 0, envelope, header.length, data.length);
+            envelope[envelope.length - 1] = '}';
+            jsonEnvelope = envelope;
+        }
+        return envelope;
+    }
+
+    /**
+     * @return The binary frame for WebSocket clients that negotiated it
+     */
+    public byte[] getBinaryFrame() {
+        byte[] binary = binaryFrame;
+        if (binary == null) {
+            byte[] idBytes = id != null ? id.toString().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            binary = ByteBuffer.allocate(1 + Short.BYTES + idBytes.length + Short.BYTES + nameBytes.length + data.length)
+                .put(BINARY_VERSION)
+                .putShort((short) idBytes.length)
+                .put(idBytes)
+                .putShort((short) nameBytes.length)
+                .put(nameBytes)
+                .put(data)
+                .array();
+            binaryFrame = binary;
+        }
+        return binary;
+    }
+}
@@ -0,0 +1,197 @@
+package com.weave.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * One open realtime connection of a user, over SSE or WebSocket. A user has one session
+ * per connected tab or device.
+ * <p>
+ * Events are never written on the caller's thread. They are appended to a bounded
+ * outbound queue that a task on the shared dispatch executor drains; the task is only
+ * scheduled while the queue is non-empty, so idle sessions hold no thread. When the
+ * queue is full the {@link OverflowPolicy} decides whether to drop the oldest queued
+ * event or to disconnect the client so it reconnects and resynchronizes.
+ * <p>
+ * Queued events are already encoded; the same {@link RealtimeEvent} instance is queued on
+ * every recipient's session and each transport writes it in its own framing.
+ * <p>
+ * The session records when it last completed a write, which lets a periodic check send
+ * heartbeats to quiet sessions and reap those whose writes have stopped completing.
+ */
+public abstract class RealtimeSession {
+    private static final Logger log = LoggerFactory.getLogger(RealtimeSession.class);
+
+    private final UUID id = UUID.randomUUID();
+    private final UUID userId;
+    private final Instant connectedAt = Instant.now();
+    private final BlockingQueue<RealtimeEvent> outbound;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor dispatcher;
+    private final Consumer<RealtimeSession> onClosed;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastWriteMillis = System.currentTimeMillis();
+    private volatile LongConsumer deliveryObserver = latency -> { };
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, DISCONNECT
+    }
+
+    /**
+     * @param queueCapacity Maximum events waiting to be written to this client
+     * @param dispatcher Executor that runs the drain task, typically one virtual thread per task
+     * @param onClosed Called once when the session is closed for any reason
+     */
+    protected RealtimeSession(UUID userId, int queueCapacity, OverflowPolicy overflowPolicy,
+                              Executor dispatcher, Consumer<RealtimeSession> onClosed) {
+        this.userId = userId;
+        // Linked rather than array-backed so an idle session holds no queue storage
+        this.outbound = new LinkedBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.dispatcher = dispatcher;
+        this.onClosed = onClosed;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public Instant getConnectedAt() {
+        return connectedAt;
+    }
+
+    public int getQueuedCount() {
+        return outbound.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return When a write last completed, or when the session opened if none has
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    /**
+     * @return Whether events are waiting or being written; a session that stays backlogged
+     *         without completing a write is stuck on a dead connection
+     */
+    public boolean isBacklogged() {
+        return draining.get();
+    }
+
+    /**
+     * Sets a callback receiving, for each event written, the nanoseconds since it was created.
+     */
+    public void observeDeliveries(LongConsumer deliveryObserver) {
+        this.deliveryObserver = deliveryObserver;
+    }
+
+    /**
+     * Queues an event for delivery without blocking.
+     * @return false if the session is closed or was disconnected because its queue overflowed
+     */
+    public boolean enqueue(RealtimeEvent event) {
+        if (closed.get()) {
+            return false;
+        }
+        while (!outbound.offer(event)) {
+            if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                log.debug("Realtime session {} of user {} fell {} events behind, disconnecting", id, userId, outbound.size());
+                close();
+                return false;
+            }
+            if (outbound.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        if (draining.compareAndSet(false, true)) {
+            dispatcher.execute(this::drain);
+        }
+        return true;
+    }
+
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            outbound.clear();
+            onClosed.accept(this);
+            try {
+                complete(null);
+            } catch (Exception e) {
+                // Already completed or the client is gone
+            }
+        }
+    }
+
+    public void closeWithError(Throwable error) {
+        if (closed.compareAndSet(false, true)) {
+            outbound.clear();
+            onClosed.accept(this);
+            try {
+                complete(error);
+            } catch (Exception e) {
+                // Already completed or the client is gone
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Writes one event to the client. Only ever called by the drain task, so never concurrently.
+     */
+    protected abstract void write(RealtimeEvent event) throws IOException;
+
+    /**
+     * Ends the underlying connection.
+     * @param error The failure that ended the session, or null for a normal close
+     */
+    protected abstract void complete(Throwable error) throws IOException;
+
+    private void drain() {
+        while (true) {
+            RealtimeEvent event = outbound.poll();
+            if (event == null) {
+                draining.set(false);
+                // An event queued after the poll but before the flag was cleared has no drainer yet
+                if (outbound.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                write(event);
+                lastWriteMillis = System.currentTimeMillis();
+                if (!event.isHeartbeat()) {
+                    deliveryObserver.accept(System.nanoTime() - event.getCreatedAtNanos());
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away or the connection already completed
+                closeWithError(e);
+                return;
+            }
+        }
+    }
+}
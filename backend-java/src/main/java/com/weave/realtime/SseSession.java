@@ -0,0 +1,39 @@
+package com.weave.realtime;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Realtime session over Server-Sent Events; writes each event's pre-built SSE frame.
+ */
+public class SseSession extends RealtimeSession {
+    private final SseEmitter emitter;
+
+    public SseSession(UUID userId, SseEmitter emitter, int queueCapacity, OverflowPolicy overflowPolicy,
+                      Executor dispatcher, Consumer<RealtimeSession> onClosed) {
+        super(userId, queueCapacity, overflowPolicy, dispatcher, onClosed);
+        this.emitter = emitter;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    @Override
+    protected void write(RealtimeEvent event) throws IOException {
+        emitter.send(event.getFrame());
+    }
+
+    @Override
+    protected void complete(Throwable error) {
+        if (error != null) {
+            emitter.completeWithError(error);
+        } else {
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.weave.realtime;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory map from thread to the realtime subscribers participating in it, so fanning an
+ * event out to a thread needs no database query.
+ * <p>
+ * Only subscribed users are tracked; membership changes for anyone else are ignored and
+ * picked up from the database when they subscribe. Sets are replaced rather than mutated,
+ * so lookups never lock. Every change bumps a version, which lets a subscriber loaded from
+ * a possibly stale query detect that a change slipped in while it was loading.
+ */
+public class ThreadSubscriberIndex {
+    private final Map<UUID, Set<UUID>> subscribersByThread = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<UUID>> threadsByUser = new ConcurrentHashMap<>();
+    private long version;
+
+    /**
+     * @return Users subscribed to the thread; never null
+     */
+    public Set<UUID> subscribers(UUID threadId) {
+        return subscribersByThread.getOrDefault(threadId, Set.of());
+    }
+
+    public boolean isSubscribed(UUID userId) {
+        return threadsByUser.containsKey(userId);
+    }
+
+    /**
+     * @return A copy of the threads of a subscribed user; empty if the user is not subscribed
+     */
+    public synchronized Set<UUID> threadsOf(UUID userId) {
+        Set<UUID> threads = threadsByUser.get(userId);
+        return threads != null ? Set.copyOf(threads) : Set.of();
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Starts tracking a user, or replaces what is tracked for them, with their full thread list.
+     */
+    public synchronized void subscribe(UUID userId, Collection<UUID> threadIds) {
+        version++;
+        Set<UUID> previous = threadsByUser.put(userId, new HashSet<>(threadIds));
+        if (previous != null) {
+            previous.forEach(threadId -> detach(threadId, userId));
+        }
+        threadIds.forEach(threadId -> attach(threadId, userId));
+    }
+
+    public synchronized void unsubscribe(UUID userId) {
+        version++;
+        Set<UUID> threads = threadsByUser.remove(userId);
+        if (threads != null) {
+            threads.forEach(threadId -> detach(threadId, userId));
+        }
+    }
+
+    /**
+     * Records that a user joined a thread; a no-op unless the user is subscribed.
+     */
+    public synchronized void addParticipant(UUID threadId, UUID userId) {
+        version++;
+        Set<UUID> threads = threadsByUser.get(userId);
+        if (threads != null && threads.add(threadId)) {
+            attach(threadId, userId);
+        }
+    }
+
+    public synchronized void removeParticipant(UUID threadId, UUID userId) {
+        version++;
+        Set<UUID> threads = threadsByUser.get(userId);
+        if (threads != null && threads.remove(threadId)) {
+            detach(threadId, userId);
+        }
+    }
+
+    public int threadCount() {
+        return subscribersByThread.size();
+    }
+
+    private void attach(UUID threadId, UUID userId) {
+        subscribersByThread.compute(threadId, (id, users) -> {
+            Set<UUID> updated = users != null ? new HashSet<>(users) : new HashSet<>();
+            updated.add(userId);
+            return Set.copyOf(updated);
+        });
+    }
+
+    private void detach(UUID threadId, UUID userId) {
+        subscribersByThread.computeIfPresent(threadId, (id, users) -> {
+            Set<UUID> updated = new HashSet<>(users);
+            updated.remove(userId);
+            return updated.isEmpty() ? null : Set.copyOf(updated);
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package com.weave.realtime;
+
+import com.weave.controller.RealtimeWebSocketHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Registers the realtime WebSocket endpoint. The handshake is an ordinary authenticated
+ * request, so it passes the same security filter chain as /v1/stream.
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final RealtimeWebSocketHandler realtimeWebSocketHandler;
+
+    public WebSocketConfig(RealtimeWebSocketHandler realtimeWebSocketHandler) {
+        this.realtimeWebSocketHandler = realtimeWebSocketHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(realtimeWebSocketHandler, "/v1/ws")
+            .addInterceptors(realtimeWebSocketHandler)
+            .setAllowedOrigins("http://localhost:3000");
+    }
+}
@@ -0,0 +1,56 @@
+package com.weave.realtime;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Realtime session over a WebSocket, writing either JSON text envelopes or binary frames
+ * as negotiated at connect time. Replies to client messages go through the same queue as
+ * events, so the drain task stays the socket's only writer.
+ */
+public class WebSocketRealtimeSession extends RealtimeSession {
+    private final WebSocketSession socket;
+    private final boolean binary;
+
+    public WebSocketRealtimeSession(UUID userId, WebSocketSession socket, boolean binary, int queueCapacity,
+                                    OverflowPolicy overflowPolicy, Executor dispatcher,
+                                    Consumer<RealtimeSession> onClosed) {
+        super(userId, queueCapacity, overflowPolicy, dispatcher, onClosed);
+        this.socket = socket;
+        this.binary = binary;
+    }
+
+    public WebSocketSession getSocket() {
+        return socket;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    protected void write(RealtimeEvent event) throws IOException {
+        if (event.isHeartbeat()) {
+            socket.sendMessage(new PingMessage());
+        } else if (binary) {
+            socket.sendMessage(new BinaryMessage(event.getBinaryFrame()));
+        } else {
+            socket.sendMessage(new TextMessage(event.getJsonEnvelope()));
+        }
+    }
+
+    @Override
+    protected void complete(Throwable error) throws IOException {
+        if (socket.isOpen()) {
+            socket.close(error != null ? CloseStatus.SERVER_ERROR : CloseStatus.NORMAL);
+        }
+    }
+}
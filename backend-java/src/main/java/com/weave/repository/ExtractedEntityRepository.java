@@ -1,6 +1,7 @@
 package com.weave.repository;
 
 import com.weave.model.ExtractedEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -29,6 +30,12 @@ public interface ExtractedEntityRepository extends JpaRepository<ExtractedEntity
     
     @Query("SELECT e FROM ExtractedEntity e WHERE e.createdAt >= :from AND e.createdAt <= :to")
     List<ExtractedEntity> findByTimeframe(@Param("from") Instant from, @Param("to") Instant to);
+    
+    /**
+     * Keyset page of entities ordered by (createdAt, id), starting strictly after the given position.
+     */
+    @Query("SELECT e FROM ExtractedEntity e WHERE e.createdAt > :createdAt OR (e.createdAt = :createdAt AND e.id > :id) ORDER BY e.createdAt ASC, e.id ASC")
+    List<ExtractedEntity> findPageAfter(@Param("createdAt") Instant createdAt, @Param("id") UUID id, Pageable pageable);
 }
 
 
@@ -1,20 +1,73 @@
 package com.weave.repository;
 
 import com.weave.model.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, UUID> {
-    List<Message> findByThreadIdOrderByTimestampAsc(UUID threadId);
+    /**
+     * One row of the message_entities join table.
+     */
+    interface MessageEntityLink {
+        UUID getMessageId();
+        UUID getEntityId();
+    }
     
-    @Query("SELECT m FROM Message m WHERE m.thread.id = :threadId AND m.content ILIKE %:query% ORDER BY m.timestamp DESC")
+    /**
+     * Entity IDs of many messages in one query, instead of initializing each message's
+     * lazy entities collection separately.
+     */
+    @Query("SELECT m.id AS messageId, e.id AS entityId FROM Message m JOIN m.entities e WHERE m.id IN :messageIds")
+    List<MessageEntityLink> findEntityLinksByMessageIds(@Param("messageIds") Collection<UUID> messageIds);
+    
+    /**
+     * Full-text match within one thread, served by the GIN index on messages.search_vector (PostgreSQL only).
+     * @param query A to_tsquery expression, e.g. from PostgresSearchBackend.toTsQuery
+     */
+    @Query(value = "SELECT m.* FROM messages m, to_tsquery('simple', :query) q " +
+                   "WHERE m.thread_id = :threadId AND m.search_vector @@ q " +
+                   "ORDER BY ts_rank(m.search_vector, q) DESC, m.timestamp DESC", nativeQuery = true)
     List<Message> searchInThread(@Param("threadId") UUID threadId, @Param("query") String query);
+    
+    /**
+     * Keyset page of messages ordered by (timestamp, id), starting strictly after the given position.
+     * Used to stream the table into the search index without offset scans.
+     */
+    @Query("SELECT m FROM Message m WHERE m.timestamp > :timestamp OR (m.timestamp = :timestamp AND m.id > :id) ORDER BY m.timestamp ASC, m.id ASC")
+    List<Message> findPageAfter(@Param("timestamp") Instant timestamp, @Param("id") UUID id, Pageable pageable);
+    
+    /**
+     * Newest messages of a thread, newest first. This and the two keyset queries below are
+     * served by idx_messages_thread_timestamp_id.
+     */
+    @Query("SELECT m FROM Message m WHERE m.thread.id = :threadId ORDER BY m.timestamp DESC, m.id DESC")
+    List<Message> findLatestInThread(@Param("threadId") UUID threadId, Pageable pageable);
+    
+    /**
+     * Messages of a thread strictly before the given position, newest first.
+     * The redundant {@code timestamp <=} bound turns the keyset condition into an index range.
+     */
+    @Query("SELECT m FROM Message m WHERE m.thread.id = :threadId AND m.timestamp <= :timestamp " +
+           "AND (m.timestamp < :timestamp OR m.id < :id) ORDER BY m.timestamp DESC, m.id DESC")
+    List<Message> findInThreadBefore(@Param("threadId") UUID threadId, @Param("timestamp") Instant timestamp,
+                                     @Param("id") UUID id, Pageable pageable);
+    
+    /**
+     * Messages of a thread strictly after the given position, oldest first.
+     */
+    @Query("SELECT m FROM Message m WHERE m.thread.id = :threadId AND m.timestamp >= :timestamp " +
+           "AND (m.timestamp > :timestamp OR m.id > :id) ORDER BY m.timestamp ASC, m.id ASC")
+    List<Message> findInThreadAfter(@Param("threadId") UUID threadId, @Param("timestamp") Instant timestamp,
+                                    @Param("id") UUID id, Pageable pageable);
 }
 
 
@@ -2,6 +2,8 @@ package com.weave.repository;
 
 import com.weave.model.ThreadParticipant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,6 +14,12 @@ public interface ThreadParticipantRepository extends JpaRepository<ThreadPartici
     List<ThreadParticipant> findByThreadId(UUID threadId);
     List<ThreadParticipant> findByUserId(UUID userId);
     boolean existsByThreadIdAndUserId(UUID threadId, UUID userId);
+    
+    @Query("SELECT tp.thread.id FROM ThreadParticipant tp WHERE tp.user.id = :userId")
+    List<UUID> findThreadIdsByUserId(@Param("userId") UUID userId);
+    
+    @Query("SELECT DISTINCT other.user.id FROM ThreadParticipant tp JOIN ThreadParticipant other ON other.thread.id = tp.thread.id WHERE tp.user.id = :userId")
+    List<UUID> findCoParticipantIdsByUserId(@Param("userId") UUID userId);
 }
 
 
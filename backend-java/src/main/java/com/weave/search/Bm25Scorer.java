@@ -0,0 +1,71 @@
+package com.weave.search;
+
+/**
+ * Okapi BM25 relevance with a multiplicative recency boost.
+ * <p>
+ * The recency boost decays exponentially with document age, so a message from
+ * today scores up to {@code 1 + recencyWeight} times an otherwise identical one
+ * from long ago. Entities get a small fixed prior since they are distilled
+ * summaries of a conversation rather than raw chat.
+ */
+public class Bm25Scorer {
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+    public static final double DEFAULT_RECENCY_WEIGHT = 0.5;
+    public static final long DEFAULT_RECENCY_HALF_LIFE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    public static final double ENTITY_BOOST = 1.2;
+
+    private final double k1;
+    private final double b;
+    private final double recencyWeight;
+    private final long recencyHalfLifeMillis;
+    private final long now;
+
+    public Bm25Scorer(long now) {
+        this(DEFAULT_K1, DEFAULT_B, DEFAULT_RECENCY_WEIGHT, DEFAULT_RECENCY_HALF_LIFE_MILLIS, now);
+    }
+
+    public Bm25Scorer(double k1, double b, double recencyWeight, long recencyHalfLifeMillis, long now) {
+        this.k1 = k1;
+        this.b = b;
+        this.recencyWeight = recencyWeight;
+        this.recencyHalfLifeMillis = recencyHalfLifeMillis;
+        this.now = now;
+    }
+
+    /**
+     * Inverse document frequency, using the non-negative BM25+ style variant
+     * so very common terms contribute a little rather than a negative amount.
+     */
+    public double idf(int docCount, int docFreq) {
+        return Math.log(1.0 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    public double termScore(double idf, int termFreq, int docLength, double avgDocLength) {
+        if (termFreq <= 0) {
+            return 0.0;
+        }
+        double norm = avgDocLength > 0 ? docLength / avgDocLength : 1.0;
+        return idf * (termFreq * (k1 + 1)) / (termFreq + k1 * (1 - b + b * norm));
+    }
+
+    /**
+     * Applies document-level boosts (type prior and recency) to a summed term score.
+     */
+    public double boost(SearchDocument document, double textScore) {
+        double score = textScore;
+        if (document.getType() == SearchDocument.Type.ENTITY) {
+            score *= ENTITY_BOOST;
+        }
+        long age = Math.max(0L, now - document.getTimestamp());
+        double decay = Math.pow(0.5, (double) age / recencyHalfLifeMillis);
+        return score * (1.0 + recencyWeight * decay);
+    }
+
+    /**
+     * Maps an unbounded score onto (0, 1) for display as a confidence value.
+     */
+    public static double toConfidence(double score) {
+        return score / (score + 1.0);
+    }
+}
@@ -0,0 +1,210 @@
+package com.weave.search;
+
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Message;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Search backend answering queries from the in-process {@link SegmentedIndex},
+ * ranked with BM25 plus a recency boost.
+ * <p>
+ * Index segments are persisted under {@code weave.search.index-dir}, so a restart only
+ * replays rows newer than the last persisted segment instead of rebuilding from scratch.
+ */
+@Component
+@ConditionalOnProperty(name = "weave.search.backend", havingValue = "index", matchIfMissing = true)
+public class IndexSearchBackend implements SearchBackend {
+    private static final Logger log = LoggerFactory.getLogger(IndexSearchBackend.class);
+
+    private static final int BOOTSTRAP_BATCH_SIZE = 1000;
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+    // Rows can commit slightly out of timestamp order; re-reading this window is cheap because
+    // already-indexed ids are skipped
+    private static final Duration REPLAY_OVERLAP = Duration.ofMinutes(5);
+
+    private final ExtractedEntityRepository entityRepository;
+    private final MessageRepository messageRepository;
+    private final SegmentedIndex index;
+
+    public IndexSearchBackend(
+            ExtractedEntityRepository entityRepository,
+            MessageRepository messageRepository,
+            @Value("${weave.search.index-dir:./data/search-index}") String indexDir,
+            @Value("${weave.search.flush-threshold:50000}") int flushThreshold,
+            @Value("${weave.search.parallelism:0}") int parallelism) {
+        this.entityRepository = entityRepository;
+        this.messageRepository = messageRepository;
+        try {
+            // 0 means one worker per core
+            this.index = SegmentedIndex.open(Path.of(indexDir), flushThreshold,
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open search index at " + indexDir, e);
+        }
+    }
+
+    /**
+     * Brings the index up to date with the database. Only rows at or after the persisted
+     * high-water timestamp (less a small overlap) are read, in keyset-ordered batches so the
+     * tables are never held in memory at once. On first start that is every row.
+     * <p>
+     * Messages are replayed before entities, so a segment flushed midway can be newer than
+     * entities not yet replayed; the replay is marked in the manifest until both passes are
+     * persisted, and a restart after an interruption replays from the same point again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        long started = System.currentTimeMillis();
+        long highWater = index.highWaterTimestamp();
+        Instant replayFrom = highWater > 0
+            ? Instant.ofEpochMilli(highWater).minus(REPLAY_OVERLAP)
+            : Instant.EPOCH;
+        int sizeBefore = index.size();
+        try {
+            index.beginReplay(highWater);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to record search index replay", e);
+        }
+
+        Instant lastTimestamp = replayFrom;
+        UUID lastId = MIN_UUID;
+        List<Message> messages;
+        do {
+            messages = messageRepository.findPageAfter(lastTimestamp, lastId, PageRequest.of(0, BOOTSTRAP_BATCH_SIZE));
+            for (Message message : messages) {
+                indexMessage(message);
+                lastTimestamp = message.getTimestamp();
+                lastId = message.getId();
+            }
+        } while (messages.size() == BOOTSTRAP_BATCH_SIZE);
+
+        lastTimestamp = replayFrom;
+        lastId = MIN_UUID;
+        List<ExtractedEntity> entities;
+        do {
+            entities = entityRepository.findPageAfter(lastTimestamp, lastId, PageRequest.of(0, BOOTSTRAP_BATCH_SIZE));
+            for (ExtractedEntity entity : entities) {
+                indexEntity(entity);
+                lastTimestamp = entity.getCreatedAt();
+                lastId = entity.getId();
+            }
+        } while (entities.size() == BOOTSTRAP_BATCH_SIZE);
+
+        // Persist what was replayed so the next restart starts from here
+        try {
+            index.completeReplay();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to record search index replay", e);
+        }
+
+        log.info("Search index ready with {} documents in {} segments ({} replayed since {}) in {} ms",
+            index.size(), index.segmentCount(), index.size() - sizeBefore, replayFrom, System.currentTimeMillis() - started);
+    }
+
+    @PreDestroy
+    public void closeIndex() {
+        index.close();
+    }
+
+    @Override
+    public void indexMessage(Message message) {
+        index.add(
+            new SearchDocument(
+                message.getId(),
+                SearchDocument.Type.MESSAGE,
+                message.getThread().getId(),
+                timestampOf(message.getTimestamp())
+            ),
+            message.getContent()
+        );
+    }
+
+    @Override
+    public void indexEntity(ExtractedEntity entity) {
+        index.add(
+            new SearchDocument(
+                entity.getId(),
+                SearchDocument.Type.ENTITY,
+                entity.getThread().getId(),
+                timestampOf(entity.getCreatedAt())
+            ),
+            SearchBackend.entityText(entity)
+        );
+    }
+
+    /**
+     * BM25 scores depend on collection statistics that every indexed document changes, so
+     * the cursor carries those of the first page.
+     */
+    @Override
+    public SearchCursor pin(String query, SearchCursor cursor) {
+        if (cursor.getStatistics() != null) {
+            return cursor;
+        }
+        QueryStatistics statistics = index.statistics(Tokenizer.tokenize(query), true);
+        return statistics != null ? cursor.withStatistics(statistics) : cursor;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the cursor's statistics were taken for a different query
+     */
+    @Override
+    public List<ScoredDocument> search(String query, Collection<UUID> threadScope, SearchCursor cursor, int limit) {
+        List<String> terms = Tokenizer.tokenize(query);
+        QueryStatistics statistics = cursor.getStatistics();
+        if (statistics == null) {
+            statistics = index.statistics(terms, true);
+            if (statistics == null) {
+                return List.of();
+            }
+        } else if (!resolves(statistics, terms)) {
+            throw new IllegalArgumentException("Search cursor belongs to a different query");
+        }
+        TopKCollector collector = new TopKCollector(limit, cursor);
+        index.search(statistics, threadScope, new Bm25Scorer(cursor.getAsOf()), collector);
+        return index.withMatchOffsets(collector.results(), statistics.allTerms());
+    }
+
+    @Override
+    public double toConfidence(double score) {
+        return Bm25Scorer.toConfidence(score);
+    }
+
+    /**
+     * @return Whether the statistics could have been taken for these terms, the last one a prefix
+     */
+    private static boolean resolves(QueryStatistics statistics, List<String> terms) {
+        if (terms.isEmpty() || !statistics.getRequired().equals(terms.subList(0, terms.size() - 1))) {
+            return false;
+        }
+        String prefix = terms.get(terms.size() - 1);
+        for (String term : statistics.getAnyOf()) {
+            if (!term.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long timestampOf(Instant instant) {
+        return instant != null ? instant.toEpochMilli() : System.currentTimeMillis();
+    }
+}
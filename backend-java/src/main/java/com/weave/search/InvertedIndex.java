@@ -0,0 +1,345 @@
+package com.weave.search;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index mapping terms to the documents that contain them.
+ * Documents get dense int ordinals in insertion order so posting lists stay sorted
+ * and can be intersected without sorting. Per-document term counts are kept for
+ * BM25 length normalization, and the character range of every occurrence is kept
+ * so hits can be highlighted without re-reading their text. Re-indexing a document tombstones its previous
+ * ordinal instead of rewriting posting lists.
+ * <p>
+ * Each document also records a dense thread ordinal. Searches can be restricted to
+ * a set of threads, which becomes a bitmap over thread ordinals that is tested while
+ * posting lists are intersected, so permission filtering costs one bit test per
+ * candidate instead of a separate pass over loaded rows.
+ * <p>
+ * This is the mutable buffer of a {@link SegmentedIndex}; once full it is frozen
+ * and written out as a {@link MappedSegment}.
+ */
+public class InvertedIndex implements Segment {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<SearchDocument> documents = new ArrayList<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final NavigableMap<String, PostingList> postings = new TreeMap<>();
+    private final BitSet deleted = new BitSet();
+    private int[] lengths = new int[1024];
+    private int[] docThreads = new int[1024];
+    private final Map<UUID, Integer> threadOrdinals = new HashMap<>();
+    private long totalLength;
+    private long maxTimestamp;
+
+    private final SegmentSearch.Documents documentAccess = new SegmentSearch.Documents() {
+        @Override
+        public boolean isLive(int doc) {
+            return !deleted.get(doc);
+        }
+
+        @Override
+        public int threadOrdinal(int doc) {
+            return docThreads[doc];
+        }
+
+        @Override
+        public int length(int doc) {
+            return lengths[doc];
+        }
+
+        @Override
+        public SearchDocument document(int doc) {
+            return documents.get(doc);
+        }
+    };
+
+    /**
+     * Adds a document, replacing any earlier version with the same id.
+     */
+    public void add(SearchDocument document, String text) {
+        List<String> terms = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        Tokenizer.tokenize(text, (term, start, end) -> {
+            terms.add(term);
+            ranges.add(new int[] {start, end});
+        });
+        lock.writeLock().lock();
+        try {
+            Integer previous = ordinals.get(document.getId());
+            if (previous != null) {
+                delete(previous);
+            }
+            int ordinal = documents.size();
+            documents.add(document);
+            ordinals.put(document.getId(), ordinal);
+            if (ordinal == lengths.length) {
+                lengths = Arrays.copyOf(lengths, ordinal * 2);
+                docThreads = Arrays.copyOf(docThreads, ordinal * 2);
+            }
+            lengths[ordinal] = terms.size();
+            docThreads[ordinal] = threadOrdinals.computeIfAbsent(document.getThreadId(), id -> threadOrdinals.size());
+            totalLength += terms.size();
+            maxTimestamp = Math.max(maxTimestamp, document.getTimestamp());
+            for (int i = 0; i < terms.size(); i++) {
+                int[] range = ranges.get(i);
+                postings.computeIfAbsent(terms.get(i), t -> new PostingList()).add(ordinal, range[0], range[1]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(UUID id) {
+        lock.readLock().lock();
+        try {
+            return ordinals.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int docCount() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long totalLength() {
+        lock.readLock().lock();
+        try {
+            return totalLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long maxTimestamp() {
+        lock.readLock().lock();
+        try {
+            return maxTimestamp;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int docFreq(String term) {
+        lock.readLock().lock();
+        try {
+            PostingList list = postings.get(term);
+            return list != null ? liveDocs(list) : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void collectPrefixTerms(String prefix, int max, SortedSet<String> into) {
+        lock.readLock().lock();
+        try {
+            int added = 0;
+            for (Map.Entry<String, PostingList> entry : postings.tailMap(prefix, true).entrySet()) {
+                String term = entry.getKey();
+                if (!term.startsWith(prefix) || added >= max) {
+                    break;
+                }
+                // Terms only replaced documents contained are gone once the buffer is written out
+                if (liveDocs(entry.getValue()) > 0) {
+                    into.add(term);
+                    added++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void search(SegmentQuery query, Collection<UUID> threadScope, Bm25Scorer scorer, TopKCollector collector) {
+        lock.readLock().lock();
+        try {
+            List<Postings> required = new ArrayList<>();
+            double[] requiredIdf = new double[query.required().size()];
+            for (int i = 0; i < query.required().size(); i++) {
+                PostingList list = postings.get(query.required().get(i));
+                if (list == null) {
+                    return;
+                }
+                required.add(list);
+                requiredIdf[i] = query.requiredIdf(i);
+            }
+
+            List<Postings> anyOf = new ArrayList<>();
+            double[] anyOfIdf = new double[query.anyOf().size()];
+            for (int i = 0; i < query.anyOf().size(); i++) {
+                PostingList list = postings.get(query.anyOf().get(i));
+                if (list != null) {
+                    anyOfIdf[anyOf.size()] = query.anyOfIdf(i);
+                    anyOf.add(list);
+                }
+            }
+            if (!query.anyOf().isEmpty() && anyOf.isEmpty()) {
+                return;
+            }
+
+            BitSet allowedThreads = null;
+            if (threadScope != null) {
+                allowedThreads = threadBitmap(threadScope);
+                if (allowedThreads.isEmpty()) {
+                    return;
+                }
+            }
+
+            SegmentSearch.run(required, requiredIdf, anyOf, Arrays.copyOf(anyOfIdf, anyOf.size()),
+                query.avgDocLength(), allowedThreads, documentAccess, scorer, collector);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] matchOffsets(UUID id, List<String> terms) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                return null;
+            }
+            List<int[]> matches = new ArrayList<>();
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                int index = list != null ? list.indexOf(ordinal) : -1;
+                if (index >= 0) {
+                    matches.add(list.offsetsAt(index));
+                }
+            }
+            return SegmentSearch.mergeOffsets(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the live documents of this index to an immutable segment file.
+     * Tombstoned documents are dropped and the remaining ones renumbered densely.
+     */
+    void writeTo(Path file) throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] remap = new int[documents.size()];
+            int[] live = new int[ordinals.size()];
+            int next = 0;
+            for (int doc = 0; doc < documents.size(); doc++) {
+                if (deleted.get(doc)) {
+                    remap[doc] = -1;
+                } else {
+                    remap[doc] = next;
+                    live[next++] = doc;
+                }
+            }
+
+            List<String> terms = new ArrayList<>(postings.keySet());
+            List<byte[]> termBytes = new ArrayList<>(terms.size());
+            Integer[] order = new Integer[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                termBytes.add(terms.get(i).getBytes(StandardCharsets.UTF_8));
+                order[i] = i;
+            }
+            // String order and UTF-8 byte order differ for supplementary characters
+            Arrays.sort(order, (a, b) -> SegmentWriter.TERM_ORDER.compare(termBytes.get(a), termBytes.get(b)));
+
+            SegmentWriter.write(file,
+                new SegmentWriter.DocSource() {
+                    @Override
+                    public int docCount() {
+                        return live.length;
+                    }
+
+                    @Override
+                    public SearchDocument document(int doc) {
+                        return documents.get(live[doc]);
+                    }
+
+                    @Override
+                    public int length(int doc) {
+                        return lengths[live[doc]];
+                    }
+                },
+                new SegmentWriter.TermSource() {
+                    private int position = -1;
+
+                    @Override
+                    public byte[] nextTerm() {
+                        position++;
+                        return position < order.length ? termBytes.get(order[position]) : null;
+                    }
+
+                    @Override
+                    public void postings(SegmentWriter.PostingSink sink) throws IOException {
+                        PostingList list = postings.get(terms.get(order[position]));
+                        for (int i = 0; i < list.size(); i++) {
+                            int doc = remap[list.doc(i)];
+                            if (doc >= 0) {
+                                sink.add(doc, list.freqAt(i), list.offsetsAt(i));
+                            }
+                        }
+                    }
+                });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Documents in the list that have not been replaced since. Caller holds the lock.
+     */
+    private int liveDocs(PostingList list) {
+        if (deleted.isEmpty()) {
+            return list.size();
+        }
+        int live = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (!deleted.get(list.doc(i))) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private void delete(int ordinal) {
+        deleted.set(ordinal);
+        totalLength -= lengths[ordinal];
+    }
+
+    private BitSet threadBitmap(Collection<UUID> threadIds) {
+        BitSet bitmap = new BitSet(threadOrdinals.size());
+        for (UUID threadId : threadIds) {
+            Integer ordinal = threadOrdinals.get(threadId);
+            if (ordinal != null) {
+                bitmap.set(ordinal);
+            }
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,409 @@
+package com.weave.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.UUID;
+
+/**
+ * Read-only segment backed by a memory-mapped file written by {@link SegmentWriter}.
+ * Term dictionary, document table and postings are all read straight from the
+ * mapping, so opening a segment costs a header read and the (small) thread table,
+ * not a scan of its contents.
+ */
+final class MappedSegment implements Segment {
+    private static final SearchDocument.Type[] TYPES = SearchDocument.Type.values();
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final long maxTimestamp;
+    private final long totalLength;
+    private final int docsOffset;
+    private final int idsOffset;
+    private final int termIndexOffset;
+    private final int offsetsOffset;
+    private final Map<UUID, Integer> threadOrdinals;
+    private final UUID[] threads;
+
+    private final SegmentSearch.Documents documents = new SegmentSearch.Documents() {
+        @Override
+        public boolean isLive(int doc) {
+            return true;
+        }
+
+        @Override
+        public int threadOrdinal(int doc) {
+            return buffer.getInt(docsOffset + doc * SegmentWriter.DOC_SIZE + 16);
+        }
+
+        @Override
+        public int length(int doc) {
+            return buffer.getInt(docsOffset + doc * SegmentWriter.DOC_SIZE + 28);
+        }
+
+        @Override
+        public SearchDocument document(int doc) {
+            return MappedSegment.this.document(doc);
+        }
+    };
+
+    private MappedSegment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < SegmentWriter.HEADER_SIZE || buffer.getInt(0) != SegmentWriter.MAGIC) {
+            throw new IOException("Not a search segment: " + file);
+        }
+        if (buffer.getInt(4) != SegmentWriter.VERSION) {
+            throw new UnsupportedVersionException("Unsupported segment version " + buffer.getInt(4) + ": " + file);
+        }
+        this.docCount = buffer.getInt(8);
+        int threadCount = buffer.getInt(12);
+        this.termCount = buffer.getInt(16);
+        this.maxTimestamp = buffer.getLong(24);
+        this.totalLength = buffer.getLong(32);
+        int threadsOffset = (int) buffer.getLong(40);
+        this.docsOffset = (int) buffer.getLong(48);
+        this.idsOffset = (int) buffer.getLong(56);
+        this.termIndexOffset = (int) buffer.getLong(80);
+        this.offsetsOffset = (int) buffer.getLong(88);
+
+        this.threads = new UUID[threadCount];
+        this.threadOrdinals = new HashMap<>(threadCount * 2);
+        for (int i = 0; i < threadCount; i++) {
+            int at = threadsOffset + i * SegmentWriter.THREAD_SIZE;
+            threads[i] = new UUID(buffer.getLong(at), buffer.getLong(at + 8));
+            threadOrdinals.put(threads[i], i);
+        }
+    }
+
+    static MappedSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public boolean contains(UUID id) {
+        return ordinalOf(id) >= 0;
+    }
+
+    @Override
+    public int[] matchOffsets(UUID id, List<String> terms) {
+        int doc = ordinalOf(id);
+        if (doc < 0) {
+            return null;
+        }
+        List<int[]> matches = new ArrayList<>();
+        for (String term : terms) {
+            Postings postings = postings(term);
+            int index = postings != null ? postings.indexOf(doc) : -1;
+            if (index >= 0) {
+                matches.add(postings.offsetsAt(index));
+            }
+        }
+        return SegmentSearch.mergeOffsets(matches);
+    }
+
+    /**
+     * @return Ordinal of the document with the given id, or -1 if absent
+     */
+    private int ordinalOf(UUID id) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = idsOffset + mid * SegmentWriter.ID_SIZE;
+            int cmp = Long.compare(buffer.getLong(at), id.getMostSignificantBits());
+            if (cmp == 0) {
+                cmp = Long.compare(buffer.getLong(at + 8), id.getLeastSignificantBits());
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(at + 16);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int docFreq(String term) {
+        int entry = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        return entry >= 0 ? termDocFreq(entry) : 0;
+    }
+
+    @Override
+    public void collectPrefixTerms(String prefix, int max, SortedSet<String> into) {
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(prefixBytes);
+        for (int added = 0; index < termCount && added < max; index++, added++) {
+            byte[] term = termBytes(termEntry(index));
+            if (!startsWith(term, prefixBytes)) {
+                break;
+            }
+            into.add(new String(term, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void search(SegmentQuery query, Collection<UUID> threadScope, Bm25Scorer scorer, TopKCollector collector) {
+        List<Postings> required = new ArrayList<>();
+        for (String term : query.required()) {
+            Postings postings = postings(term);
+            if (postings == null) {
+                return;
+            }
+            required.add(postings);
+        }
+        double[] requiredIdf = new double[required.size()];
+        for (int i = 0; i < requiredIdf.length; i++) {
+            requiredIdf[i] = query.requiredIdf(i);
+        }
+
+        List<Postings> anyOf = new ArrayList<>();
+        double[] anyOfIdf = new double[query.anyOf().size()];
+        for (int i = 0; i < query.anyOf().size(); i++) {
+            Postings postings = postings(query.anyOf().get(i));
+            if (postings != null) {
+                anyOfIdf[anyOf.size()] = query.anyOfIdf(i);
+                anyOf.add(postings);
+            }
+        }
+        if (!query.anyOf().isEmpty() && anyOf.isEmpty()) {
+            return;
+        }
+
+        BitSet allowedThreads = null;
+        if (threadScope != null) {
+            allowedThreads = new BitSet(threads.length);
+            for (UUID threadId : threadScope) {
+                Integer ordinal = threadOrdinals.get(threadId);
+                if (ordinal != null) {
+                    allowedThreads.set(ordinal);
+                }
+            }
+            if (allowedThreads.isEmpty()) {
+                return;
+            }
+        }
+
+        SegmentSearch.run(required, requiredIdf, anyOf, Arrays.copyOf(anyOfIdf, anyOf.size()),
+            query.avgDocLength(), allowedThreads, documents, scorer, collector);
+    }
+
+    SearchDocument document(int doc) {
+        int at = docsOffset + doc * SegmentWriter.DOC_SIZE;
+        return new SearchDocument(
+            new UUID(buffer.getLong(at), buffer.getLong(at + 8)),
+            TYPES[buffer.get(at + 32)],
+            threads[buffer.getInt(at + 16)],
+            buffer.getLong(at + 20)
+        );
+    }
+
+    int length(int doc) {
+        return documents.length(doc);
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    /**
+     * @return UTF-8 bytes of the term at the given dictionary position
+     */
+    byte[] termAt(int index) {
+        return termBytes(termEntry(index));
+    }
+
+    /**
+     * @return Postings of the term at the given dictionary position
+     */
+    Postings postingsAt(int index) {
+        return postingsForEntry(termEntry(index));
+    }
+
+    private Postings postings(String term) {
+        int entry = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        return entry >= 0 ? postingsForEntry(entry) : null;
+    }
+
+    private Postings postingsForEntry(int entry) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        int df = buffer.getInt(entry + 2 + length);
+        int offset = (int) buffer.getLong(entry + 6 + length);
+        return new MappedPostings(buffer, offset, df, offsetsOffset);
+    }
+
+    private int termEntry(int index) {
+        return (int) buffer.getLong(termIndexOffset + index * 8);
+    }
+
+    private int termDocFreq(int entry) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        return buffer.getInt(entry + 2 + length);
+    }
+
+    private byte[] termBytes(int entry) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(entry + 2, bytes);
+        return bytes;
+    }
+
+    /**
+     * @return Offset of the term's dictionary entry, or -1 if absent
+     */
+    private int findTerm(byte[] term) {
+        int index = lowerBound(term);
+        if (index < termCount) {
+            int entry = termEntry(index);
+            if (Arrays.equals(termBytes(entry), term)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Position of the first dictionary term not less than {@code term}
+     */
+    private int lowerBound(byte[] term) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (SegmentWriter.TERM_ORDER.compare(termBytes(termEntry(mid)), term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean startsWith(byte[] term, byte[] prefix) {
+        return term.length >= prefix.length && Arrays.equals(term, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Thrown for a well-formed segment written in an older file format.
+     */
+    static final class UnsupportedVersionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedVersionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Posting list view over the mapped file; (doc, freq, offsets position) int triples.
+     */
+    private static final class MappedPostings implements Postings {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int size;
+        private final int offsetsOffset;
+
+        MappedPostings(ByteBuffer buffer, int offset, int size, int offsetsOffset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+            this.offsetsOffset = offsetsOffset;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int doc(int index) {
+            return buffer.getInt(offset + index * SegmentWriter.POSTING_SIZE);
+        }
+
+        @Override
+        public boolean contains(int doc) {
+            return find(doc) >= 0;
+        }
+
+        @Override
+        public int freq(int doc) {
+            int index = find(doc);
+            return index >= 0 ? freqAt(index) : 0;
+        }
+
+        @Override
+        public int freqAt(int index) {
+            return buffer.getInt(offset + index * SegmentWriter.POSTING_SIZE + 4);
+        }
+
+        @Override
+        public int[] offsetsAt(int index) {
+            int at = offsetsOffset + buffer.getInt(offset + index * SegmentWriter.POSTING_SIZE + 8);
+            int[] offsets = new int[freqAt(index) * 2];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = buffer.getInt(at + i * 4);
+            }
+            return offsets;
+        }
+
+        @Override
+        public int indexOf(int doc) {
+            return find(doc);
+        }
+
+        private int find(int doc) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = doc(mid);
+                if (value < doc) {
+                    low = mid + 1;
+                } else if (value > doc) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
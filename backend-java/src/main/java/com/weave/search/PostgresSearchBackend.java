@@ -0,0 +1,116 @@
+package com.weave.search;
+
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Search backend that pushes matching and ranking into Postgres full-text search,
+ * for deployments that do not want to run the in-process index.
+ * <p>
+ * Relies on the trigger-maintained {@code search_vector} columns from
+ * {@code V3__Add_full_text_search.sql} (backfilled by V7) and their GIN indexes from V8,
+ * so it requires Flyway migrations rather than Hibernate DDL auto. Ranking mirrors
+ * {@link Bm25Scorer}'s boosts on top of {@code ts_rank}.
+ */
+@Component
+@ConditionalOnProperty(name = "weave.search.backend", havingValue = "postgres")
+public class PostgresSearchBackend implements SearchBackend {
+    // ts_rank normalization 32 maps rank r to r / (r + 1). Timestamps are truncated to the
+    // millisecond precision a cursor carries, and :asOf pins the recency reference time
+    private static final String SEARCH_SQL =
+        "SELECT id, thread_id, ts, doc_type, score " +
+        "FROM ( " +
+        "    SELECT id, thread_id, ts, doc_type, " +
+        "           rank * (1 + :recencyWeight * power(0.5, GREATEST(extract(epoch FROM ((to_timestamp(:asOf / 1000.0) AT TIME ZONE 'UTC') - ts)), 0) * 1000 / :halfLifeMillis)) AS score " +
+        "    FROM ( " +
+        "        SELECT m.id, m.thread_id, date_trunc('milliseconds', m.timestamp) AS ts, 'MESSAGE' AS doc_type, ts_rank(m.search_vector, q.query, 32) AS rank " +
+        "        FROM messages m, to_tsquery('simple', :tsquery) AS q(query) " +
+        "        WHERE m.search_vector @@ q.query AND m.thread_id IN (:threadIds) " +
+        "        UNION ALL " +
+        "        SELECT e.id, e.thread_id, date_trunc('milliseconds', e.created_at), 'ENTITY', ts_rank(e.search_vector, q.query, 32) * :entityBoost " +
+        "        FROM extracted_entities e, to_tsquery('simple', :tsquery) AS q(query) " +
+        "        WHERE e.search_vector @@ q.query AND e.thread_id IN (:threadIds) " +
+        "    ) hits " +
+        ") ranked " +
+        "WHERE NOT :positioned OR score < :score OR (score = :score AND (ts < :ts OR (ts = :ts AND id < :id))) " +
+        "ORDER BY score DESC, ts DESC, id DESC " +
+        "LIMIT :limit";
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public PostgresSearchBackend(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void indexMessage(Message message) {
+        // search_vector is maintained by a trigger on insert
+    }
+
+    @Override
+    public void indexEntity(ExtractedEntity entity) {
+        // search_vector is maintained by a trigger on insert
+    }
+
+    @Override
+    public List<ScoredDocument> search(String query, Collection<UUID> threadScope, SearchCursor cursor, int limit) {
+        String tsquery = toTsQuery(Tokenizer.tokenize(query));
+        if (tsquery.isEmpty() || threadScope.isEmpty()) {
+            return List.of();
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("tsquery", tsquery)
+            .addValue("threadIds", threadScope)
+            .addValue("entityBoost", Bm25Scorer.ENTITY_BOOST)
+            .addValue("recencyWeight", Bm25Scorer.DEFAULT_RECENCY_WEIGHT)
+            .addValue("halfLifeMillis", Bm25Scorer.DEFAULT_RECENCY_HALF_LIFE_MILLIS)
+            .addValue("asOf", cursor.getAsOf())
+            .addValue("positioned", cursor.isPositioned())
+            .addValue("score", cursor.getScore())
+            .addValue("ts", LocalDateTime.ofInstant(Instant.ofEpochMilli(cursor.getTimestamp()), ZoneOffset.UTC))
+            .addValue("id", cursor.isPositioned() ? cursor.getId() : MIN_UUID)
+            .addValue("limit", limit);
+
+        return jdbcTemplate.query(SEARCH_SQL, params, (rs, rowNum) -> new ScoredDocument(
+            new SearchDocument(
+                rs.getObject("id", UUID.class),
+                SearchDocument.Type.valueOf(rs.getString("doc_type")),
+                rs.getObject("thread_id", UUID.class),
+                // Timestamps are stored as UTC wall-clock time (hibernate.jdbc.time_zone)
+                rs.getObject("ts", LocalDateTime.class).toInstant(ZoneOffset.UTC).toEpochMilli()
+            ),
+            rs.getDouble("score")
+        ));
+    }
+
+    @Override
+    public double toConfidence(double score) {
+        // Already normalized by ts_rank; boosts can push it past 1
+        return Math.min(score, 1.0);
+    }
+
+    /**
+     * Builds an AND query with the last term as a prefix match, matching the in-process
+     * index. Tokenizer output is letters and digits only, so it needs no escaping.
+     */
+    static String toTsQuery(List<String> terms) {
+        if (terms.isEmpty()) {
+            return "";
+        }
+        return terms.stream().collect(Collectors.joining(" & ")) + ":*";
+    }
+}
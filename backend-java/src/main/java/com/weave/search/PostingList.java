@@ -0,0 +1,77 @@
+package com.weave.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable, ascending list of document ordinals for a single term,
+ * with the number of times the term occurs in each document and where.
+ */
+final class PostingList implements Postings {
+    private int[] docs = new int[4];
+    private int[] freqs = new int[4];
+    // Index into offsets of each posting's first (start, end) pair
+    private int[] firstOffsets = new int[4];
+    private int[] offsets = new int[8];
+    private int size;
+    private int offsetCount;
+
+    void add(int doc, int start, int end) {
+        // Documents are indexed in ordinal order, so a repeat can only be the last entry
+        if (size > 0 && docs[size - 1] == doc) {
+            freqs[size - 1]++;
+        } else {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+                firstOffsets = Arrays.copyOf(firstOffsets, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = 1;
+            firstOffsets[size] = offsetCount;
+            size++;
+        }
+        if (offsetCount + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[offsetCount++] = start;
+        offsets[offsetCount++] = end;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int doc(int index) {
+        return docs[index];
+    }
+
+    @Override
+    public boolean contains(int doc) {
+        return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+    }
+
+    @Override
+    public int freq(int doc) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        return index >= 0 ? freqs[index] : 0;
+    }
+
+    @Override
+    public int freqAt(int index) {
+        return freqs[index];
+    }
+
+    @Override
+    public int[] offsetsAt(int index) {
+        int from = firstOffsets[index];
+        return Arrays.copyOfRange(offsets, from, from + freqs[index] * 2);
+    }
+
+    @Override
+    public int indexOf(int doc) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        return index >= 0 ? index : -1;
+    }
+}
@@ -0,0 +1,31 @@
+package com.weave.search;
+
+/**
+ * Read access to one term's posting list: ascending document ordinals with term frequencies
+ * and the character ranges of each occurrence.
+ */
+interface Postings {
+    int size();
+
+    int doc(int index);
+
+    int freqAt(int index);
+
+    boolean contains(int doc);
+
+    /**
+     * @return Occurrences of the term in the document, or 0 if it does not contain it
+     */
+    int freq(int doc);
+
+    /**
+     * @return Start and end character offsets of each occurrence in the posting's document,
+     *         as consecutive pairs in text order
+     */
+    int[] offsetsAt(int index);
+
+    /**
+     * @return Position of the document in this list, or -1 if absent
+     */
+    int indexOf(int doc);
+}
@@ -0,0 +1,156 @@
+package com.weave.search;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The collection statistics a query is scored with: document count, total document length,
+ * and the terms it resolved to, with the document frequency of each. Trailing-prefix
+ * expansions are part of it, since they decide which documents match.
+ * <p>
+ * BM25 scores depend on these, so any document added to the index changes every score.
+ * A {@link SearchCursor} carries the statistics of its first page and later pages are
+ * scored with them, which keeps the ranking, and so the page boundaries, fixed.
+ */
+public final class QueryStatistics {
+    // Term lengths are encoded in one byte; the tokenizer's 64-char terms take at most 192
+    private static final int MAX_TERM_BYTES = 255;
+
+    private final int docCount;
+    private final long totalLength;
+    private final List<String> required;
+    private final int[] requiredDocFreqs;
+    private final List<String> anyOf;
+    private final int[] anyOfDocFreqs;
+
+    QueryStatistics(int docCount, long totalLength, List<String> required, int[] requiredDocFreqs,
+                    List<String> anyOf, int[] anyOfDocFreqs) {
+        if (required.size() != requiredDocFreqs.length || anyOf.size() != anyOfDocFreqs.length) {
+            throw new IllegalArgumentException("Each term needs exactly one document frequency");
+        }
+        this.docCount = docCount;
+        this.totalLength = totalLength;
+        this.required = List.copyOf(required);
+        this.requiredDocFreqs = requiredDocFreqs.clone();
+        this.anyOf = List.copyOf(anyOf);
+        this.anyOfDocFreqs = anyOfDocFreqs.clone();
+    }
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    double avgDocLength() {
+        return docCount > 0 ? (double) totalLength / docCount : 0.0;
+    }
+
+    /**
+     * @return Terms every match must contain
+     */
+    public List<String> getRequired() {
+        return required;
+    }
+
+    int requiredDocFreq(int index) {
+        return requiredDocFreqs[index];
+    }
+
+    /**
+     * @return Terms of which a match must contain at least one, if any are given
+     */
+    public List<String> getAnyOf() {
+        return anyOf;
+    }
+
+    int anyOfDocFreq(int index) {
+        return anyOfDocFreqs[index];
+    }
+
+    /**
+     * @return Every term a match can contain, for highlighting
+     */
+    public List<String> allTerms() {
+        List<String> terms = new ArrayList<>(required);
+        terms.addAll(anyOf);
+        return terms;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(docCount);
+        buffer.putLong(totalLength);
+        writeTerms(buffer, required, requiredDocFreqs);
+        writeTerms(buffer, anyOf, anyOfDocFreqs);
+    }
+
+    int encodedSize() {
+        return Integer.BYTES + Long.BYTES + termsSize(required) + termsSize(anyOf);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the buffer does not hold statistics written by {@link #writeTo}
+     */
+    static QueryStatistics readFrom(ByteBuffer buffer) {
+        try {
+            int docCount = buffer.getInt();
+            long totalLength = buffer.getLong();
+            List<String> required = new ArrayList<>();
+            int[] requiredDocFreqs = readTerms(buffer, required);
+            List<String> anyOf = new ArrayList<>();
+            int[] anyOfDocFreqs = readTerms(buffer, anyOf);
+            if (docCount < 0 || totalLength < 0) {
+                throw new IllegalArgumentException("Malformed search cursor");
+            }
+            return new QueryStatistics(docCount, totalLength, required, requiredDocFreqs, anyOf, anyOfDocFreqs);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed search cursor", e);
+        }
+    }
+
+    private static int termsSize(List<String> terms) {
+        int size = Short.BYTES;
+        for (String term : terms) {
+            size += 1 + termBytes(term).length + Integer.BYTES;
+        }
+        return size;
+    }
+
+    private static void writeTerms(ByteBuffer buffer, List<String> terms, int[] docFreqs) {
+        buffer.putShort((short) terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            byte[] bytes = termBytes(terms.get(i));
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+            buffer.putInt(docFreqs[i]);
+        }
+    }
+
+    private static int[] readTerms(ByteBuffer buffer, List<String> into) {
+        int count = Short.toUnsignedInt(buffer.getShort());
+        int[] docFreqs = new int[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(bytes);
+            into.add(new String(bytes, StandardCharsets.UTF_8));
+            docFreqs[i] = buffer.getInt();
+            if (docFreqs[i] < 0) {
+                throw new IllegalArgumentException("Malformed search cursor");
+            }
+        }
+        return docFreqs;
+    }
+
+    private static byte[] termBytes(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TERM_BYTES) {
+            throw new IllegalArgumentException("Search term too long: " + term.length() + " characters");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,36 @@
+package com.weave.search;
+
+/**
+ * A matching document together with its relevance score and, when the backend
+ * tracks them, the character ranges where query terms occur in its text.
+ */
+public final class ScoredDocument {
+    private final SearchDocument document;
+    private final double score;
+    private final int[] matchOffsets;
+
+    public ScoredDocument(SearchDocument document, double score) {
+        this(document, score, null);
+    }
+
+    public ScoredDocument(SearchDocument document, double score, int[] matchOffsets) {
+        this.document = document;
+        this.score = score;
+        this.matchOffsets = matchOffsets;
+    }
+
+    public SearchDocument getDocument() {
+        return document;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return (start, end) character offset pairs ordered by start, or null if not known
+     */
+    public int[] getMatchOffsets() {
+        return matchOffsets;
+    }
+}
@@ -0,0 +1,59 @@
+package com.weave.search;
+
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Message;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Matching and ranking engine behind {@link com.weave.service.SearchService}.
+ * Selected per environment with {@code weave.search.backend}: {@code index} (default)
+ * for the in-process segmented index, or {@code postgres} for Postgres full-text search.
+ */
+public interface SearchBackend {
+    /**
+     * Makes a newly saved message searchable. Backends that query the database directly ignore this.
+     */
+    void indexMessage(Message message);
+
+    /**
+     * Makes a newly saved entity searchable. Backends that query the database directly ignore this.
+     */
+    void indexEntity(ExtractedEntity entity);
+
+    /**
+     * @param query Free-text query as typed; the last word is matched as a prefix
+     * @param threadScope Threads the caller may see
+     * @param cursor Reference time for scoring and, after the first page, where the previous page ended
+     * @param limit Maximum number of hits
+     * @return Hits ranking after the cursor, best first, with match offsets where the backend stores them
+     */
+    List<ScoredDocument> search(String query, Collection<UUID> threadScope, SearchCursor cursor, int limit);
+
+    /**
+     * Fixes in the cursor whatever else this backend's scores depend on, besides the cursor's
+     * reference time, so every page of a query is ranked alike however the data changes in
+     * between. Backends whose scores depend only on the document itself return it unchanged.
+     * @param query Free-text query as typed
+     * @param cursor Cursor for the first page, or one decoded from a continuation token
+     */
+    default SearchCursor pin(String query, SearchCursor cursor) {
+        return cursor;
+    }
+
+    /**
+     * Maps a hit's score onto (0, 1) for display.
+     */
+    double toConfidence(double score);
+
+    /**
+     * The searchable text of an entity; match offsets of entity hits refer to this string.
+     */
+    static String entityText(ExtractedEntity entity) {
+        return entity.getDescription() != null
+            ? entity.getTitle() + " " + entity.getDescription()
+            : entity.getTitle();
+    }
+}
@@ -0,0 +1,133 @@
+package com.weave.search;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a ranked result list, handed to clients as an opaque continuation token.
+ * <p>
+ * Results are ordered by score, then timestamp, then id, all descending, so the last hit
+ * of a page identifies exactly where the next page starts. The cursor also pins the
+ * reference time used for the recency boost and, where the backend scores with them, the
+ * {@link QueryStatistics} of the first page; otherwise scores would drift between page
+ * requests as documents are indexed, and hits could be skipped or repeated.
+ */
+public final class SearchCursor {
+    // asOf, score, timestamp, id, and whether statistics follow
+    private static final int POSITION_SIZE = 41;
+
+    private final long asOf;
+    private final boolean positioned;
+    private final double score;
+    private final long timestamp;
+    private final UUID id;
+    private final QueryStatistics statistics;
+
+    private SearchCursor(long asOf, boolean positioned, double score, long timestamp, UUID id, QueryStatistics statistics) {
+        this.asOf = asOf;
+        this.positioned = positioned;
+        this.score = score;
+        this.timestamp = timestamp;
+        this.id = id;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Cursor for the first page of a query scored as of the given time.
+     */
+    public static SearchCursor first(long asOf) {
+        return new SearchCursor(asOf, false, 0.0, 0L, null, null);
+    }
+
+    /**
+     * Cursor for the page following the given hit, keeping this cursor's reference time and statistics.
+     */
+    public SearchCursor after(ScoredDocument hit) {
+        return new SearchCursor(asOf, true, hit.getScore(), hit.getDocument().getTimestamp(), hit.getDocument().getId(), statistics);
+    }
+
+    /**
+     * Same position, scored with the given statistics from now on.
+     */
+    public SearchCursor withStatistics(QueryStatistics statistics) {
+        return new SearchCursor(asOf, positioned, score, timestamp, id, statistics);
+    }
+
+    public long getAsOf() {
+        return asOf;
+    }
+
+    public boolean isPositioned() {
+        return positioned;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    /**
+     * @return Statistics pinned by the backend for this query, or null if none are
+     */
+    public QueryStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return Whether a hit ranks strictly after this cursor's position
+     */
+    public boolean admits(SearchDocument document, double hitScore) {
+        if (!positioned) {
+            return true;
+        }
+        if (hitScore != score) {
+            return hitScore < score;
+        }
+        if (document.getTimestamp() != timestamp) {
+            return document.getTimestamp() < timestamp;
+        }
+        return document.getId().compareTo(id) < 0;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(POSITION_SIZE + (statistics != null ? statistics.encodedSize() : 0));
+        buffer.putLong(asOf);
+        buffer.putDouble(score);
+        buffer.putLong(timestamp);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        buffer.put((byte) (statistics != null ? 1 : 0));
+        if (statistics != null) {
+            statistics.writeTo(buffer);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the token was not produced by {@link #encode()}
+     */
+    public static SearchCursor decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length < POSITION_SIZE) {
+            throw new IllegalArgumentException("Malformed search cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long asOf = buffer.getLong();
+        double score = buffer.getDouble();
+        long timestamp = buffer.getLong();
+        UUID id = new UUID(buffer.getLong(), buffer.getLong());
+        QueryStatistics statistics = buffer.get() != 0 ? QueryStatistics.readFrom(buffer) : null;
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Malformed search cursor");
+        }
+        return new SearchCursor(asOf, true, score, timestamp, id, statistics);
+    }
+}
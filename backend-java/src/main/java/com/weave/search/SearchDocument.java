@@ -0,0 +1,41 @@
+package com.weave.search;
+
+import java.util.UUID;
+
+/**
+ * Metadata kept in the index for each searchable row.
+ * Content itself stays in the database; results are hydrated by id.
+ */
+public final class SearchDocument {
+    private final UUID id;
+    private final Type type;
+    private final UUID threadId;
+    private final long timestamp;
+
+    public SearchDocument(UUID id, Type type, UUID threadId, long timestamp) {
+        this.id = id;
+        this.type = type;
+        this.threadId = threadId;
+        this.timestamp = timestamp;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public enum Type {
+        MESSAGE, ENTITY
+    }
+}
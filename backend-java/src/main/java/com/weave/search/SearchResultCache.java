@@ -0,0 +1,190 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bounded LRU cache of search result pages, keyed by normalized query, page position and
+ * the set of threads the caller may see, so users with the same thread access share entries.
+ * <p>
+ * Entries are dropped as soon as any thread in their scope changes. A result computed
+ * concurrently with such a change is not stored: {@link #put} rejects values whose
+ * {@link #stamp()} predates the latest invalidation of a thread in their scope. Only the
+ * latest invalidations, as many as there are entries, are remembered; a value computed
+ * before a forgotten one is rejected too.
+ */
+public class SearchResultCache<V> {
+    private final int maxEntries;
+    private final LinkedHashMap<Key, V> entries;
+    private final Map<UUID, Set<Key>> keysByThread = new HashMap<>();
+    // Oldest invalidation first, so the eldest stamp is the one to forget
+    private final LinkedHashMap<UUID, Long> invalidatedAt = new LinkedHashMap<>();
+    private long forgottenAt;
+    private long clock;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public SearchResultCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param query Query as typed; normalized to its index terms
+     * @param threadScope Threads the caller may see, in any order
+     * @param cursor Page position token, or null for the first page
+     */
+    public static Key key(String query, List<UUID> threadScope, int limit, String cursor) {
+        List<UUID> scope = new ArrayList<>(threadScope);
+        scope.sort(null);
+        return new Key(String.join(" ", Tokenizer.tokenize(query)), scope, limit, cursor);
+    }
+
+    public synchronized V get(Key key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * @return Logical time to pass to {@link #put} for a value computed from now on
+     */
+    public synchronized long stamp() {
+        return clock;
+    }
+
+    /**
+     * Stores a value unless a thread in its scope was invalidated after {@code stamp}.
+     */
+    public synchronized void put(Key key, V value, long stamp) {
+        if (forgottenAt > stamp) {
+            return;
+        }
+        for (UUID threadId : key.scope) {
+            Long invalidated = invalidatedAt.get(threadId);
+            if (invalidated != null && invalidated > stamp) {
+                return;
+            }
+        }
+        if (entries.put(key, value) == null) {
+            for (UUID threadId : key.scope) {
+                keysByThread.computeIfAbsent(threadId, id -> new HashSet<>()).add(key);
+            }
+        }
+        if (entries.size() > maxEntries) {
+            Iterator<Key> eldest = entries.keySet().iterator();
+            Key evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted);
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops every entry whose scope includes the thread.
+     */
+    public synchronized void invalidateThread(UUID threadId) {
+        invalidatedAt.remove(threadId);
+        invalidatedAt.put(threadId, ++clock);
+        if (invalidatedAt.size() > maxEntries) {
+            Iterator<Long> eldest = invalidatedAt.values().iterator();
+            forgottenAt = eldest.next();
+            eldest.remove();
+        }
+        Set<Key> keys = keysByThread.remove(threadId);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            if (entries.remove(key) != null) {
+                invalidations++;
+                unlink(key);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    public synchronized long invalidationCount() {
+        return invalidations;
+    }
+
+    private void unlink(Key key) {
+        for (UUID threadId : key.scope) {
+            Set<Key> keys = keysByThread.get(threadId);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByThread.remove(threadId);
+                }
+            }
+        }
+    }
+
+    public static final class Key {
+        private final String query;
+        private final List<UUID> scope;
+        private final int limit;
+        private final String cursor;
+        private final int hash;
+
+        private Key(String query, List<UUID> scope, int limit, String cursor) {
+            this.query = query;
+            this.scope = scope;
+            this.limit = limit;
+            this.cursor = cursor;
+            this.hash = Objects.hash(query, scope, limit, cursor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return hash == other.hash
+                && limit == other.limit
+                && query.equals(other.query)
+                && Objects.equals(cursor, other.cursor)
+                && scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
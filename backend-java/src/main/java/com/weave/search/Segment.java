@@ -0,0 +1,40 @@
+package com.weave.search;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.UUID;
+
+/**
+ * A searchable slice of the index: either the mutable in-memory buffer or an
+ * immutable memory-mapped file. Collection statistics are summed across segments
+ * by {@link SegmentedIndex} so scores are comparable between them.
+ */
+interface Segment {
+    int docCount();
+
+    long totalLength();
+
+    long maxTimestamp();
+
+    boolean contains(UUID id);
+
+    int docFreq(String term);
+
+    /**
+     * Adds up to {@code max} dictionary terms starting with {@code prefix} to {@code into}.
+     */
+    void collectPrefixTerms(String prefix, int max, SortedSet<String> into);
+
+    /**
+     * Scores documents matching the query and offers them to the collector.
+     * @param threadScope Threads the caller may see, or null for no restriction
+     */
+    void search(SegmentQuery query, Collection<UUID> threadScope, Bm25Scorer scorer, TopKCollector collector);
+
+    /**
+     * @return Character ranges where any of the terms occur in the document, as (start, end)
+     *         pairs ordered by start, or null if the document is not in this segment
+     */
+    int[] matchOffsets(UUID id, List<String> terms);
+}
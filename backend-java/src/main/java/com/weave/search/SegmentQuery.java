@@ -0,0 +1,44 @@
+package com.weave.search;
+
+import java.util.List;
+
+/**
+ * A query resolved against global statistics: every required term must match,
+ * and if any optional terms are given at least one of them must match too.
+ * Optional terms are the dictionary expansions of a trailing prefix.
+ */
+final class SegmentQuery {
+    private final List<String> required;
+    private final double[] requiredIdf;
+    private final List<String> anyOf;
+    private final double[] anyOfIdf;
+    private final double avgDocLength;
+
+    SegmentQuery(List<String> required, double[] requiredIdf, List<String> anyOf, double[] anyOfIdf, double avgDocLength) {
+        this.required = required;
+        this.requiredIdf = requiredIdf;
+        this.anyOf = anyOf;
+        this.anyOfIdf = anyOfIdf;
+        this.avgDocLength = avgDocLength;
+    }
+
+    List<String> required() {
+        return required;
+    }
+
+    double requiredIdf(int index) {
+        return requiredIdf[index];
+    }
+
+    List<String> anyOf() {
+        return anyOf;
+    }
+
+    double anyOfIdf(int index) {
+        return anyOfIdf[index];
+    }
+
+    double avgDocLength() {
+        return avgDocLength;
+    }
+}
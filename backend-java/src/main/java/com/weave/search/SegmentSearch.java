@@ -0,0 +1,125 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Conjunctive match-and-score loop shared by all segment implementations.
+ * Walks the shortest required posting list and probes the others, so cost is
+ * bounded by the rarest term rather than the most common one. Thread scope is
+ * a bitmap over segment-local thread ordinals tested before any probing.
+ */
+final class SegmentSearch {
+
+    /**
+     * Per-document data a segment exposes to the search loop.
+     */
+    interface Documents {
+        boolean isLive(int doc);
+
+        int threadOrdinal(int doc);
+
+        int length(int doc);
+
+        SearchDocument document(int doc);
+    }
+
+    private SegmentSearch() {
+    }
+
+    /**
+     * @param required Postings for each required term, aligned with the query's required terms
+     * @param anyOf Postings for each optional term that exists in this segment, aligned with {@code anyOfIdf}
+     * @param allowedThreads Bitmap over thread ordinals, or null for no restriction
+     */
+    static void run(List<Postings> required, double[] requiredIdf, List<Postings> anyOf, double[] anyOfIdf,
+                    double avgDocLength, BitSet allowedThreads, Documents documents,
+                    Bm25Scorer scorer, TopKCollector collector) {
+        if (required.isEmpty()) {
+            BitSet candidates = new BitSet();
+            for (Postings postings : anyOf) {
+                for (int i = 0; i < postings.size(); i++) {
+                    candidates.set(postings.doc(i));
+                }
+            }
+            for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+                score(doc, required, requiredIdf, anyOf, anyOfIdf, avgDocLength, allowedThreads, documents, scorer, collector);
+            }
+            return;
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < required.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt(i -> required.get(i).size()));
+        Postings shortest = required.get(order.get(0));
+
+        for (int i = 0; i < shortest.size(); i++) {
+            int doc = shortest.doc(i);
+            if (!inScope(allowedThreads, documents, doc)) {
+                continue;
+            }
+            boolean matches = true;
+            for (int j = 1; j < order.size() && matches; j++) {
+                matches = required.get(order.get(j)).contains(doc);
+            }
+            if (matches && !anyOf.isEmpty()) {
+                matches = false;
+                for (Postings postings : anyOf) {
+                    if (postings.contains(doc)) {
+                        matches = true;
+                        break;
+                    }
+                }
+            }
+            if (matches) {
+                score(doc, required, requiredIdf, anyOf, anyOfIdf, avgDocLength, null, documents, scorer, collector);
+            }
+        }
+    }
+
+    private static void score(int doc, List<Postings> required, double[] requiredIdf,
+                              List<Postings> anyOf, double[] anyOfIdf, double avgDocLength,
+                              BitSet allowedThreads, Documents documents,
+                              Bm25Scorer scorer, TopKCollector collector) {
+        if (!documents.isLive(doc) || !inScope(allowedThreads, documents, doc)) {
+            return;
+        }
+        int length = documents.length(doc);
+        double score = 0.0;
+        for (int i = 0; i < required.size(); i++) {
+            score += scorer.termScore(requiredIdf[i], required.get(i).freq(doc), length, avgDocLength);
+        }
+        for (int i = 0; i < anyOf.size(); i++) {
+            score += scorer.termScore(anyOfIdf[i], anyOf.get(i).freq(doc), length, avgDocLength);
+        }
+        SearchDocument document = documents.document(doc);
+        collector.collect(document, scorer.boost(document, score));
+    }
+
+    private static boolean inScope(BitSet allowedThreads, Documents documents, int doc) {
+        return allowedThreads == null || allowedThreads.get(documents.threadOrdinal(doc));
+    }
+
+    /**
+     * Combines per-term (start, end) offset pairs of one document into a single array ordered by start.
+     */
+    static int[] mergeOffsets(List<int[]> perTerm) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int[] offsets : perTerm) {
+            for (int i = 0; i < offsets.length; i += 2) {
+                ranges.add(new int[] {offsets[i], offsets[i + 1]});
+            }
+        }
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+        int[] merged = new int[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            merged[i * 2] = ranges.get(i)[0];
+            merged[i * 2 + 1] = ranges.get(i)[1];
+        }
+        return merged;
+    }
+}
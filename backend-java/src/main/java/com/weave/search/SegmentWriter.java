@@ -0,0 +1,228 @@
+package com.weave.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes an immutable segment file in a single sequential pass.
+ * <pre>
+ * header      fixed {@link #HEADER_SIZE} bytes: counts, statistics and section offsets
+ * threads     threadCount x (msb, lsb)
+ * docs        docCount x (msb, lsb, thread ordinal, timestamp, length, type)
+ * ids         docCount x (msb, lsb, doc ordinal), sorted by id for binary search
+ * postings    per term: df x (doc ordinal, term frequency, offsets position)
+ * terms       per term: (UTF-8 length, UTF-8 bytes, df, postings offset), in unsigned byte order
+ * term index  termCount x offset of the term entry, for binary search
+ * offsets     per posting: term frequency x (start char, end char), addressed relative to the section
+ * </pre>
+ * All values are big-endian. Offsets are spooled to a side file while postings are
+ * streamed and appended last, so the writer still makes a single pass over its inputs.
+ * The file is written under a temporary name and renamed into place, so readers never
+ * observe a partial segment.
+ */
+final class SegmentWriter {
+    static final int MAGIC = 0x57534547;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 96;
+    static final int THREAD_SIZE = 16;
+    static final int DOC_SIZE = 33;
+    static final int ID_SIZE = 20;
+    static final int POSTING_SIZE = 12;
+
+    static final Comparator<byte[]> TERM_ORDER = Arrays::compareUnsigned;
+
+    /**
+     * Documents of the segment being written, addressed by their new ordinals.
+     */
+    interface DocSource {
+        int docCount();
+
+        SearchDocument document(int doc);
+
+        int length(int doc);
+    }
+
+    /**
+     * Terms of the segment being written, visited in {@link #TERM_ORDER}.
+     */
+    interface TermSource {
+        /**
+         * Advances to the next term.
+         * @return The term's UTF-8 bytes, or null when there are no more terms
+         */
+        byte[] nextTerm() throws IOException;
+
+        /**
+         * Emits the current term's postings in ascending document order.
+         */
+        void postings(PostingSink sink) throws IOException;
+    }
+
+    interface PostingSink {
+        /**
+         * @param offsets Start and end character offsets of each occurrence, as consecutive pairs
+         */
+        void add(int doc, int freq, int[] offsets) throws IOException;
+    }
+
+    private SegmentWriter() {
+    }
+
+    static void write(Path file, DocSource docs, TermSource terms) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Path offsetsTmp = file.resolveSibling(file.getFileName() + ".offsets.tmp");
+        int docCount = docs.docCount();
+        long maxTimestamp = 0L;
+        long totalLength = 0L;
+
+        Map<UUID, Integer> threadOrdinals = new HashMap<>();
+        List<UUID> threads = new ArrayList<>();
+        for (int doc = 0; doc < docCount; doc++) {
+            SearchDocument document = docs.document(doc);
+            if (threadOrdinals.putIfAbsent(document.getThreadId(), threads.size()) == null) {
+                threads.add(document.getThreadId());
+            }
+            maxTimestamp = Math.max(maxTimestamp, document.getTimestamp());
+            totalLength += docs.length(doc);
+        }
+
+        long threadsOffset;
+        long docsOffset;
+        long idsOffset;
+        long postingsOffset;
+        long termsOffset;
+        long termIndexOffset;
+        long offsetsOffset;
+        int termCount = 0;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+             DataOutputStream offsetsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsetsTmp), 1 << 16))) {
+            out.write(new byte[HEADER_SIZE]);
+
+            threadsOffset = checkedSize(out);
+            for (UUID thread : threads) {
+                out.writeLong(thread.getMostSignificantBits());
+                out.writeLong(thread.getLeastSignificantBits());
+            }
+
+            docsOffset = checkedSize(out);
+            UUID[] ids = new UUID[docCount];
+            for (int doc = 0; doc < docCount; doc++) {
+                SearchDocument document = docs.document(doc);
+                ids[doc] = document.getId();
+                out.writeLong(document.getId().getMostSignificantBits());
+                out.writeLong(document.getId().getLeastSignificantBits());
+                out.writeInt(threadOrdinals.get(document.getThreadId()));
+                out.writeLong(document.getTimestamp());
+                out.writeInt(docs.length(doc));
+                out.writeByte(document.getType().ordinal());
+            }
+
+            idsOffset = checkedSize(out);
+            Integer[] byId = new Integer[docCount];
+            for (int doc = 0; doc < docCount; doc++) {
+                byId[doc] = doc;
+            }
+            Arrays.sort(byId, Comparator.comparing(doc -> ids[doc]));
+            for (Integer doc : byId) {
+                out.writeLong(ids[doc].getMostSignificantBits());
+                out.writeLong(ids[doc].getLeastSignificantBits());
+                out.writeInt(doc);
+            }
+
+            postingsOffset = checkedSize(out);
+            List<byte[]> termBytes = new ArrayList<>();
+            List<int[]> termStats = new ArrayList<>();
+            int[] df = new int[1];
+            byte[] term;
+            while ((term = terms.nextTerm()) != null) {
+                int offset = checkedSize(out);
+                df[0] = 0;
+                terms.postings((doc, freq, offsets) -> {
+                    out.writeInt(doc);
+                    out.writeInt(freq);
+                    out.writeInt(checkedSize(offsetsOut));
+                    for (int position : offsets) {
+                        offsetsOut.writeInt(position);
+                    }
+                    df[0]++;
+                });
+                if (df[0] > 0) {
+                    termBytes.add(term);
+                    termStats.add(new int[] {df[0], offset});
+                }
+            }
+            termCount = termBytes.size();
+
+            termsOffset = checkedSize(out);
+            int[] entryOffsets = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                entryOffsets[i] = checkedSize(out);
+                out.writeShort(termBytes.get(i).length);
+                out.write(termBytes.get(i));
+                out.writeInt(termStats.get(i)[0]);
+                out.writeLong(termStats.get(i)[1]);
+            }
+
+            termIndexOffset = checkedSize(out);
+            for (int offset : entryOffsets) {
+                out.writeLong(offset);
+            }
+
+            offsetsOffset = checkedSize(out);
+            offsetsOut.flush();
+            Files.copy(offsetsTmp, out);
+            checkedSize(out);
+        } finally {
+            Files.deleteIfExists(offsetsTmp);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(docCount)
+            .putInt(threads.size())
+            .putInt(termCount)
+            .putInt(0)
+            .putLong(maxTimestamp)
+            .putLong(totalLength)
+            .putLong(threadsOffset)
+            .putLong(docsOffset)
+            .putLong(idsOffset)
+            .putLong(postingsOffset)
+            .putLong(termsOffset)
+            .putLong(termIndexOffset)
+            .putLong(offsetsOffset);
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp.toFile(), "rw")) {
+            raf.write(header.array());
+            raf.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Segments are mapped as a single buffer, so they must stay addressable with an int.
+     */
+    private static int checkedSize(DataOutputStream out) throws IOException {
+        // DataOutputStream saturates its counter at Integer.MAX_VALUE rather than wrapping
+        int size = out.size();
+        if (size == Integer.MAX_VALUE) {
+            throw new IOException("Segment exceeds 2 GB");
+        }
+        return size;
+    }
+}
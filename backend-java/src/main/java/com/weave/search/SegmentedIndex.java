@@ -0,0 +1,697 @@
+package com.weave.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log-structured search index: an in-memory {@link InvertedIndex} buffer in front of
+ * immutable, memory-mapped segment files.
+ * <p>
+ * When the buffer reaches the flush threshold it is frozen (still searchable) and
+ * written to disk on a background thread, then swapped for its mapped segment.
+ * When too many segments accumulate, adjacent runs are merged in the background.
+ * A manifest names the live segment files and is replaced atomically after every
+ * flush or merge, so a crash can never expose a half-written or superseded segment.
+ * <p>
+ * While a startup replay is running the manifest also records where it started. Segments
+ * flushed mid-replay can hold recent documents of one kind before older documents of
+ * another kind have been replayed, so until the replay completes their timestamps say
+ * nothing about what is durable, and an interrupted replay is restarted from its start.
+ * <p>
+ * Messages and entities are immutable once indexed, so adding an id that is already
+ * present is a no-op. That keeps segments free of deletes and makes replaying an
+ * overlapping window at startup safe.
+ * <p>
+ * Queries over several large segments fan out on a bounded fork-join pool: each
+ * segment fills its own top-k collector and the partial lists are merged.
+ */
+public class SegmentedIndex implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SegmentedIndex.class);
+
+    // Upper bound on dictionary terms a trailing prefix may expand to
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MERGE_FACTOR = 4;
+    // Keeps merged files well under the 2 GB limit of a single mapping
+    private static final int MAX_MERGED_DOCS = 2_000_000;
+    private static final String MANIFEST = "segments.manifest";
+    private static final String REPLAY_MARKER = "replay-from ";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Below this many documents the whole query takes less time than handing work to the pool
+    private static final int MIN_PARALLEL_DOCS = 50_000;
+
+    private final Path directory;
+    private final int flushThreshold;
+    private final AtomicLong generation;
+    private final Object writeLock = new Object();
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ForkJoinPool searchPool;
+    private volatile State state;
+    // Start of the replay in progress, or -1; guarded by the write lock
+    private long replayFrom;
+
+    /**
+     * Immutable view of the index: segments oldest first, then the mutable buffer.
+     */
+    private static final class State {
+        final List<Segment> segments;
+        final InvertedIndex buffer;
+
+        State(List<Segment> segments, InvertedIndex buffer) {
+            this.segments = List.copyOf(segments);
+            this.buffer = buffer;
+        }
+
+        List<Segment> all() {
+            List<Segment> all = new ArrayList<>(segments);
+            all.add(buffer);
+            return all;
+        }
+    }
+
+    private SegmentedIndex(Path directory, int flushThreshold, int parallelism, List<Segment> segments,
+                           long nextGeneration, long replayFrom) {
+        this.directory = directory;
+        this.replayFrom = replayFrom;
+        this.flushThreshold = flushThreshold;
+        this.searchPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.generation = new AtomicLong(nextGeneration);
+        this.state = new State(segments, new InvertedIndex());
+    }
+
+    /**
+     * Opens the index stored in {@code directory}, creating it if needed.
+     * Files not named by the manifest are leftovers of interrupted work and are deleted.
+     * @param parallelism Maximum segments searched concurrently by one query; 1 searches them sequentially
+     */
+    public static SegmentedIndex open(Path directory, int flushThreshold, int parallelism) throws IOException {
+        Files.createDirectories(directory);
+
+        List<String> names = new ArrayList<>();
+        long replayFrom = -1;
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (line.startsWith(REPLAY_MARKER)) {
+                    replayFrom = Long.parseLong(line.substring(REPLAY_MARKER.length()).trim());
+                } else if (!line.isBlank()) {
+                    names.add(line.trim());
+                }
+            }
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        long nextGeneration = 0;
+        try {
+            for (String name : names) {
+                segments.add(MappedSegment.open(directory.resolve(name)));
+                nextGeneration = Math.max(nextGeneration, generationOf(name) + 1);
+            }
+        } catch (MappedSegment.UnsupportedVersionException e) {
+            // Written by an older release; start empty so every row is replayed into the current format
+            log.warn("Discarding search index in {}: {}", directory, e.getMessage());
+            segments.clear();
+            names.clear();
+            replayFrom = -1;
+            Files.delete(manifest);
+        }
+
+        Set<String> live = new HashSet<>(names);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.equals(MANIFEST) && !live.contains(name)) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+
+        return new SegmentedIndex(directory, flushThreshold, parallelism, segments, nextGeneration, replayFrom);
+    }
+
+    /**
+     * Indexes a document unless a document with the same id is already present.
+     */
+    public void add(SearchDocument document, String text) {
+        InvertedIndex frozen = null;
+        synchronized (writeLock) {
+            State current = state;
+            for (Segment segment : current.all()) {
+                if (segment.contains(document.getId())) {
+                    return;
+                }
+            }
+            current.buffer.add(document, text);
+            if (current.buffer.docCount() >= flushThreshold) {
+                frozen = freezeBuffer();
+            }
+        }
+        if (frozen != null) {
+            maintenance.execute(this::persistPending);
+        }
+    }
+
+    /**
+     * Scores documents containing every query term across all segments, with statistics
+     * taken from the index as it is now.
+     * @param terms Tokenized query terms
+     * @param prefixLast Whether the final term should also match longer terms that start with it,
+     *                   so partially typed words still find results
+     * @param threadScope Threads the caller may see, or null for no restriction
+     */
+    public void search(List<String> terms, boolean prefixLast, Collection<UUID> threadScope,
+                       Bm25Scorer scorer, TopKCollector collector) {
+        QueryStatistics statistics = statistics(terms, prefixLast);
+        if (statistics != null) {
+            search(statistics, threadScope, scorer, collector);
+        }
+    }
+
+    /**
+     * Resolves a query against the index as it is now: expands a trailing prefix and reads
+     * the collection statistics its scores depend on.
+     * @param terms Tokenized query terms
+     * @param prefixLast Whether the final term should also match longer terms that start with it
+     * @return The statistics, or null if no document can match
+     */
+    public QueryStatistics statistics(List<String> terms, boolean prefixLast) {
+        if (terms.isEmpty()) {
+            return null;
+        }
+        List<Segment> segments = state.all();
+
+        List<String> required = prefixLast ? terms.subList(0, terms.size() - 1) : terms;
+        List<String> anyOf = prefixLast ? expandPrefix(segments, terms.get(terms.size() - 1)) : List.of();
+        if (prefixLast && anyOf.isEmpty()) {
+            return null;
+        }
+
+        int docCount = 0;
+        long totalLength = 0;
+        for (Segment segment : segments) {
+            docCount += segment.docCount();
+            totalLength += segment.totalLength();
+        }
+
+        int[] requiredDocFreqs = new int[required.size()];
+        for (int i = 0; i < required.size(); i++) {
+            requiredDocFreqs[i] = docFreq(segments, required.get(i));
+            if (requiredDocFreqs[i] == 0) {
+                return null;
+            }
+        }
+        int[] anyOfDocFreqs = new int[anyOf.size()];
+        for (int i = 0; i < anyOf.size(); i++) {
+            anyOfDocFreqs[i] = docFreq(segments, anyOf.get(i));
+        }
+        return new QueryStatistics(docCount, totalLength, required, requiredDocFreqs, anyOf, anyOfDocFreqs);
+    }
+
+    /**
+     * Scores documents matching a resolved query across all segments. Scores depend only on
+     * the statistics given, so documents indexed since they were taken leave them unchanged.
+     * @param threadScope Threads the caller may see, or null for no restriction
+     */
+    public void search(QueryStatistics statistics, Collection<UUID> threadScope,
+                       Bm25Scorer scorer, TopKCollector collector) {
+        List<Segment> segments = state.all();
+        int docCount = statistics.getDocCount();
+
+        List<String> required = statistics.getRequired();
+        double[] requiredIdf = new double[required.size()];
+        for (int i = 0; i < required.size(); i++) {
+            requiredIdf[i] = scorer.idf(docCount, statistics.requiredDocFreq(i));
+        }
+        List<String> anyOf = statistics.getAnyOf();
+        double[] anyOfIdf = new double[anyOf.size()];
+        for (int i = 0; i < anyOf.size(); i++) {
+            anyOfIdf[i] = scorer.idf(docCount, statistics.anyOfDocFreq(i));
+        }
+
+        SegmentQuery query = new SegmentQuery(required, requiredIdf, anyOf, anyOfIdf, statistics.avgDocLength());
+        if (searchPool == null || segments.size() < 2 || docCount < MIN_PARALLEL_DOCS) {
+            for (Segment segment : segments) {
+                segment.search(query, threadScope, scorer, collector);
+            }
+            return;
+        }
+
+        List<Callable<TopKCollector>> tasks = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            tasks.add(() -> {
+                TopKCollector partial = collector.fork();
+                segment.search(query, threadScope, scorer, partial);
+                return partial;
+            });
+        }
+        try {
+            for (Future<TopKCollector> partial : searchPool.invokeAll(tasks)) {
+                collector.merge(partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while searching index segments", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to search index segment", e.getCause());
+        }
+    }
+
+    /**
+     * Attaches the character ranges of matched query terms to each hit, so callers can
+     * build highlighted snippets without re-tokenizing the hit's text.
+     * @param terms The query terms the hits were found with
+     * @param prefixLast Whether the final term was matched as a prefix
+     * @return The hits in the same order, each carrying its match offsets
+     */
+    public List<ScoredDocument> withMatchOffsets(List<ScoredDocument> hits, List<String> terms, boolean prefixLast) {
+        if (hits.isEmpty() || terms.isEmpty()) {
+            return hits;
+        }
+        List<String> matchTerms = new ArrayList<>(terms);
+        if (prefixLast) {
+            matchTerms.remove(matchTerms.size() - 1);
+            matchTerms.addAll(expandPrefix(state.all(), terms.get(terms.size() - 1)));
+        }
+        return withMatchOffsets(hits, matchTerms);
+    }
+
+    /**
+     * Attaches the character ranges of the given terms to each hit.
+     * @param matchTerms Terms to locate, such as {@link QueryStatistics#allTerms()}
+     * @return The hits in the same order, each carrying its match offsets
+     */
+    public List<ScoredDocument> withMatchOffsets(List<ScoredDocument> hits, List<String> matchTerms) {
+        if (hits.isEmpty()) {
+            return hits;
+        }
+        List<Segment> segments = state.all();
+        List<ScoredDocument> highlighted = new ArrayList<>(hits.size());
+        for (ScoredDocument hit : hits) {
+            int[] offsets = null;
+            for (Segment segment : segments) {
+                offsets = segment.matchOffsets(hit.getDocument().getId(), matchTerms);
+                if (offsets != null) {
+                    break;
+                }
+            }
+            highlighted.add(new ScoredDocument(hit.getDocument(), hit.getScore(), offsets));
+        }
+        return highlighted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : state.all()) {
+            size += segment.docCount();
+        }
+        return size;
+    }
+
+    public int segmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * @return Newest document timestamp that is durable on disk, or 0 if nothing is persisted.
+     *         Documents after this point must be replayed from the database after a restart.
+     *         If a replay was interrupted, its starting point instead.
+     */
+    public long highWaterTimestamp() {
+        synchronized (writeLock) {
+            if (replayFrom >= 0) {
+                return replayFrom;
+            }
+        }
+        long highWater = 0L;
+        for (Segment segment : state.segments) {
+            if (segment instanceof MappedSegment) {
+                highWater = Math.max(highWater, segment.maxTimestamp());
+            }
+        }
+        return highWater;
+    }
+
+    /**
+     * Records in the manifest that a replay starting at the given high-water timestamp is in
+     * progress, so that {@link #highWaterTimestamp()} returns it until {@link #completeReplay()}.
+     */
+    public void beginReplay(long highWater) throws IOException {
+        synchronized (writeLock) {
+            replayFrom = highWater;
+            writeManifest(state.segments);
+        }
+    }
+
+    /**
+     * Persists everything replayed, then clears the replay marker.
+     */
+    public void completeReplay() throws IOException {
+        flush();
+        synchronized (writeLock) {
+            replayFrom = -1;
+            writeManifest(state.segments);
+        }
+    }
+
+    /**
+     * Freezes the buffer and writes everything not yet on disk, waiting for completion.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            freezeBuffer();
+        }
+        persistPending();
+    }
+
+    @Override
+    public void close() {
+        if (searchPool != null) {
+            searchPool.shutdown();
+        }
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Moves the buffer into the segment list and starts a new one. Caller holds the write lock.
+     */
+    private InvertedIndex freezeBuffer() {
+        State current = state;
+        if (current.buffer.docCount() == 0) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList<>(current.segments);
+        segments.add(current.buffer);
+        state = new State(segments, new InvertedIndex());
+        return current.buffer;
+    }
+
+    /**
+     * Writes every frozen in-memory segment to disk, then merges if needed.
+     * Runs on the maintenance thread, or on the caller during shutdown.
+     */
+    private synchronized void persistPending() {
+        for (Segment segment : state.segments) {
+            if (segment instanceof InvertedIndex) {
+                InvertedIndex frozen = (InvertedIndex) segment;
+                try {
+                    Path file = directory.resolve(segmentName(generation.getAndIncrement()));
+                    frozen.writeTo(file);
+                    MappedSegment mapped = MappedSegment.open(file);
+                    replace(List.of(frozen), mapped);
+                    log.debug("Flushed search segment {} with {} documents", file.getFileName(), mapped.docCount());
+                } catch (IOException e) {
+                    // The frozen buffer stays searchable in memory; the next flush retries it
+                    log.error("Failed to flush search segment: {}", e.getMessage(), e);
+                    return;
+                }
+            }
+        }
+        mergeIfNeeded();
+    }
+
+    private void mergeIfNeeded() {
+        while (true) {
+            List<MappedSegment> run = pickMergeRun();
+            if (run.isEmpty()) {
+                return;
+            }
+            try {
+                Path file = directory.resolve(segmentName(generation.getAndIncrement()));
+                SegmentMerger.merge(run, file);
+                MappedSegment merged = MappedSegment.open(file);
+                replace(run, merged);
+                for (MappedSegment input : run) {
+                    deleteQuietly(input.file());
+                }
+                log.debug("Merged {} search segments into {} ({} documents)", run.size(), file.getFileName(), merged.docCount());
+            } catch (IOException e) {
+                log.error("Failed to merge search segments: {}", e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Chooses the run of {@link #MERGE_FACTOR} adjacent on-disk segments with the fewest
+     * documents, once there are more than {@link #MAX_SEGMENTS}. Merging small neighbours
+     * first keeps write amplification low, as in size-tiered LSM compaction.
+     */
+    private List<MappedSegment> pickMergeRun() {
+        List<Segment> segments = state.segments;
+        if (segments.size() <= MAX_SEGMENTS) {
+            return List.of();
+        }
+        List<MappedSegment> best = List.of();
+        long bestDocs = Long.MAX_VALUE;
+        for (int start = 0; start + MERGE_FACTOR <= segments.size(); start++) {
+            List<MappedSegment> run = new ArrayList<>();
+            long docs = 0;
+            for (int i = start; i < start + MERGE_FACTOR; i++) {
+                if (!(segments.get(i) instanceof MappedSegment)) {
+                    break;
+                }
+                run.add((MappedSegment) segments.get(i));
+                docs += segments.get(i).docCount();
+            }
+            if (run.size() == MERGE_FACTOR && docs <= MAX_MERGED_DOCS && docs < bestDocs) {
+                best = run;
+                bestDocs = docs;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Swaps a contiguous run of segments for its replacement and rewrites the manifest.
+     */
+    private void replace(List<? extends Segment> run, Segment replacement) throws IOException {
+        synchronized (writeLock) {
+            State current = state;
+            List<Segment> segments = new ArrayList<>();
+            boolean inserted = false;
+            for (Segment segment : current.segments) {
+                if (run.contains(segment)) {
+                    if (!inserted) {
+                        segments.add(replacement);
+                        inserted = true;
+                    }
+                } else {
+                    segments.add(segment);
+                }
+            }
+            state = new State(segments, current.buffer);
+            writeManifest(segments);
+        }
+    }
+
+    private void writeManifest(List<Segment> segments) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment instanceof MappedSegment) {
+                names.add(((MappedSegment) segment).file().getFileName().toString());
+            }
+        }
+        if (replayFrom >= 0) {
+            names.add(REPLAY_MARKER + replayFrom);
+        }
+        Path tmp = directory.resolve(MANIFEST + ".tmp");
+        Files.write(tmp, names, StandardCharsets.UTF_8);
+        Files.move(tmp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return Up to {@link #MAX_PREFIX_EXPANSIONS} dictionary terms starting with the prefix, in order
+     */
+    private static List<String> expandPrefix(List<Segment> segments, String prefix) {
+        SortedSet<String> expansions = new TreeSet<>();
+        for (Segment segment : segments) {
+            segment.collectPrefixTerms(prefix, MAX_PREFIX_EXPANSIONS, expansions);
+        }
+        List<String> terms = new ArrayList<>(Math.min(expansions.size(), MAX_PREFIX_EXPANSIONS));
+        for (String term : expansions) {
+            if (terms.size() == MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    private static int docFreq(List<Segment> segments, String term) {
+        int docFreq = 0;
+        for (Segment segment : segments) {
+            docFreq += segment.docFreq(term);
+        }
+        return docFreq;
+    }
+
+    private static String segmentName(long generation) {
+        return String.format("segment-%010d%s", generation, SEGMENT_SUFFIX);
+    }
+
+    private static long generationOf(String name) {
+        return Long.parseLong(name.substring("segment-".length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still mapped on some platforms; it is not in the manifest and is removed on next open
+            log.warn("Could not delete search index file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Streams several adjacent segments into one, concatenating documents and
+     * k-way merging the sorted term dictionaries.
+     */
+    private static final class SegmentMerger {
+        private SegmentMerger() {
+        }
+
+        static void merge(List<MappedSegment> inputs, Path file) throws IOException {
+            int[] bases = new int[inputs.size()];
+            int total = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                bases[i] = total;
+                total += inputs.get(i).docCount();
+            }
+            int docCount = total;
+
+            SegmentWriter.DocSource docs = new SegmentWriter.DocSource() {
+                @Override
+                public int docCount() {
+                    return docCount;
+                }
+
+                @Override
+                public SearchDocument document(int doc) {
+                    int input = inputFor(doc);
+                    return inputs.get(input).document(doc - bases[input]);
+                }
+
+                @Override
+                public int length(int doc) {
+                    int input = inputFor(doc);
+                    return inputs.get(input).length(doc - bases[input]);
+                }
+
+                private int inputFor(int doc) {
+                    int input = inputs.size() - 1;
+                    while (bases[input] > doc) {
+                        input--;
+                    }
+                    return input;
+                }
+            };
+
+            PriorityQueue<TermCursor> queue = new PriorityQueue<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                TermCursor cursor = new TermCursor(i, inputs.get(i));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+
+            SegmentWriter.TermSource terms = new SegmentWriter.TermSource() {
+                private final List<TermCursor> current = new ArrayList<>();
+
+                @Override
+                public byte[] nextTerm() {
+                    for (TermCursor cursor : current) {
+                        if (cursor.advance()) {
+                            queue.add(cursor);
+                        }
+                    }
+                    current.clear();
+                    if (queue.isEmpty()) {
+                        return null;
+                    }
+                    byte[] term = queue.peek().term;
+                    while (!queue.isEmpty() && SegmentWriter.TERM_ORDER.compare(queue.peek().term, term) == 0) {
+                        current.add(queue.poll());
+                    }
+                    // Inputs are in document order, so emitting them in input order keeps postings ascending
+                    current.sort((a, b) -> Integer.compare(a.input, b.input));
+                    return term;
+                }
+
+                @Override
+                public void postings(SegmentWriter.PostingSink sink) throws IOException {
+                    for (TermCursor cursor : current) {
+                        Postings postings = cursor.segment.postingsAt(cursor.position);
+                        int base = bases[cursor.input];
+                        for (int i = 0; i < postings.size(); i++) {
+                            sink.add(base + postings.doc(i), postings.freqAt(i), postings.offsetsAt(i));
+                        }
+                    }
+                }
+            };
+
+            SegmentWriter.write(file, docs, terms);
+        }
+    }
+
+    private static final class TermCursor implements Comparable<TermCursor> {
+        final int input;
+        final MappedSegment segment;
+        int position = -1;
+        byte[] term;
+
+        TermCursor(int input, MappedSegment segment) {
+            this.input = input;
+            this.segment = segment;
+        }
+
+        boolean advance() {
+            position++;
+            if (position >= segment.termCount()) {
+                return false;
+            }
+            term = segment.termAt(position);
+            return true;
+        }
+
+        @Override
+        public int compareTo(TermCursor other) {
+            int cmp = SegmentWriter.TERM_ORDER.compare(term, other.term);
+            return cmp != 0 ? cmp : Integer.compare(input, other.input);
+        }
+    }
+}
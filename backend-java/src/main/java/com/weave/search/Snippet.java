@@ -0,0 +1,146 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A short excerpt of a hit's text around its densest cluster of matches, with the
+ * matched ranges expressed relative to the excerpt.
+ */
+public final class Snippet {
+    private static final String ELLIPSIS = "\u2026";
+
+    private final String text;
+    private final int[] highlights;
+
+    private Snippet(String text, int[] highlights) {
+        this.text = text;
+        this.highlights = highlights;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return (start, end) offset pairs into {@link #getText()}, ordered by start
+     */
+    public int[] getHighlights() {
+        return highlights;
+    }
+
+    /**
+     * Cuts a window of at most {@code maxLength} characters (plus ellipses) from the text,
+     * placed to cover as many matches as possible and widened evenly around them.
+     * @param matchOffsets (start, end) pairs ordered by start, as produced by the index
+     */
+    public static Snippet of(String text, int[] matchOffsets, int maxLength) {
+        if (text == null) {
+            return new Snippet("", new int[0]);
+        }
+        if (text.length() <= maxLength) {
+            return new Snippet(text, clip(matchOffsets, 0, text.length(), 0));
+        }
+        if (matchOffsets == null || matchOffsets.length == 0) {
+            int end = wordBoundaryBefore(text, maxLength);
+            return new Snippet(text.substring(0, end) + ELLIPSIS, new int[0]);
+        }
+
+        // Densest run of matches that fits in the window
+        int bestFirst = 0;
+        int bestLast = 0;
+        for (int first = 0, last = 0; first < matchOffsets.length; first += 2) {
+            last = Math.max(last, first);
+            while (last + 2 < matchOffsets.length && matchOffsets[last + 3] - matchOffsets[first] <= maxLength) {
+                last += 2;
+            }
+            if (last - first > bestLast - bestFirst) {
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
+
+        int spanStart = matchOffsets[bestFirst];
+        int spanEnd = Math.min(matchOffsets[bestLast + 1], spanStart + maxLength);
+        int start = Math.max(0, spanStart - (maxLength - (spanEnd - spanStart)) / 2);
+        int end = Math.min(text.length(), start + maxLength);
+        start = Math.max(0, end - maxLength);
+        if (start > 0) {
+            start = wordBoundaryAfter(text, start, spanStart);
+        }
+        if (end < text.length()) {
+            end = wordBoundaryBefore(text, end, spanEnd);
+        }
+
+        String prefix = start > 0 ? ELLIPSIS : "";
+        String suffix = end < text.length() ? ELLIPSIS : "";
+        return new Snippet(prefix + text.substring(start, end) + suffix,
+            clip(matchOffsets, start, end, prefix.length()));
+    }
+
+    /**
+     * Locates query terms in text that carries no stored offsets, using the same
+     * tokenization and prefix rule as the index.
+     */
+    public static int[] findMatches(String text, List<String> terms, boolean prefixLast) {
+        if (terms.isEmpty()) {
+            return new int[0];
+        }
+        List<String> exact = prefixLast ? terms.subList(0, terms.size() - 1) : terms;
+        String prefix = prefixLast ? terms.get(terms.size() - 1) : null;
+        List<int[]> ranges = new ArrayList<>();
+        Tokenizer.tokenize(text, (term, start, end) -> {
+            if (exact.contains(term) || (prefix != null && term.startsWith(prefix))) {
+                ranges.add(new int[] {start, end});
+            }
+        });
+        return SegmentSearch.mergeOffsets(ranges);
+    }
+
+    /**
+     * @return Ranges lying entirely within [start, end), shifted to start at {@code shift}
+     */
+    private static int[] clip(int[] offsets, int start, int end, int shift) {
+        if (offsets == null) {
+            return new int[0];
+        }
+        int[] clipped = new int[offsets.length];
+        int count = 0;
+        for (int i = 0; i < offsets.length; i += 2) {
+            if (offsets[i] >= start && offsets[i + 1] <= end) {
+                clipped[count++] = offsets[i] - start + shift;
+                clipped[count++] = offsets[i + 1] - start + shift;
+            }
+        }
+        return Arrays.copyOf(clipped, count);
+    }
+
+    private static int wordBoundaryBefore(String text, int end) {
+        return wordBoundaryBefore(text, end, 0);
+    }
+
+    /**
+     * Moves a cut point back to the preceding whitespace, but not before {@code floor}.
+     */
+    private static int wordBoundaryBefore(String text, int end, int floor) {
+        for (int i = end; i > floor; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Moves a cut point forward past the next whitespace, but not beyond {@code ceiling}.
+     */
+    private static int wordBoundaryAfter(String text, int start, int ceiling) {
+        for (int i = start; i < ceiling; i++) {
+            if (Character.isWhitespace(text.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return start;
+    }
+}
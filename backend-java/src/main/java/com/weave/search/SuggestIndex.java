@@ -0,0 +1,219 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory search-as-you-type index over short labels.
+ * <p>
+ * Label terms are kept in a sorted map so a prefix is answered with a single range scan,
+ * and each term is also registered under its character trigrams so typo-tolerant lookups
+ * only compare against terms that share at least one trigram with the input.
+ * Reads are lock-free; writers are serialized.
+ */
+public class SuggestIndex {
+    // Same default cut-off as pg_trgm's similarity threshold
+    private static final double MIN_SIMILARITY = 0.3;
+    // Bounds the work for very short prefixes such as a single letter. Counts only labels the
+    // caller may see, so a prefix crowded with other users' labels still completes theirs
+    private static final int MAX_PREFIX_MATCHES = 1024;
+
+    private final ConcurrentSkipListMap<String, Set<UUID>> terms = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Set<String>> trigramTerms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Suggestion> suggestions = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a suggestion, replacing any previous one with the same id.
+     */
+    public synchronized void put(Suggestion suggestion) {
+        Suggestion previous = suggestions.put(suggestion.getId(), suggestion);
+        if (previous != null) {
+            if (previous.getTerms().equals(suggestion.getTerms())) {
+                return;
+            }
+            unlink(previous);
+        }
+        for (String term : suggestion.getTerms()) {
+            terms.computeIfAbsent(term, this::registerTrigrams).add(suggestion.getId());
+        }
+    }
+
+    public synchronized void remove(UUID id) {
+        Suggestion previous = suggestions.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    public int size() {
+        return suggestions.size();
+    }
+
+    /**
+     * Returns the best suggestions for what the user has typed so far.
+     * Every word but the last must prefix a term of the label; the last word is completed
+     * against the term dictionary. Prefix completions always rank above fuzzy matches, and
+     * labels whose first term matches rank above labels matching further in.
+     * @param query Text typed so far
+     * @param fuzzy Also return labels whose terms are trigram-similar to the last word
+     * @param filter Restricts which suggestions the caller may see
+     * @param limit Maximum number of suggestions to return
+     */
+    public List<Suggestion> suggest(String query, boolean fuzzy, Predicate<Suggestion> filter, int limit) {
+        List<String> words = Tokenizer.tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        String last = words.get(words.size() - 1);
+        List<String> leading = words.subList(0, words.size() - 1);
+
+        Map<UUID, Suggestion> visible = new HashMap<>();
+        Set<UUID> hidden = new HashSet<>();
+        Map<UUID, Double> scores = new HashMap<>();
+        for (Map.Entry<String, Set<UUID>> entry : terms.tailMap(last).entrySet()) {
+            String term = entry.getKey();
+            if (!term.startsWith(last) || scores.size() >= MAX_PREFIX_MATCHES) {
+                break;
+            }
+            // Closer completions score higher: "dinn" prefers "dinner" over "dinnerware"
+            double score = 1.0 + (double) last.length() / term.length();
+            for (UUID id : entry.getValue()) {
+                if (isVisible(id, leading, filter, visible, hidden)) {
+                    scores.merge(id, score, Math::max);
+                }
+            }
+        }
+
+        if (fuzzy) {
+            Set<String> queryTrigrams = trigrams(last);
+            Map<String, Integer> overlaps = new HashMap<>();
+            for (String trigram : queryTrigrams) {
+                Set<String> candidates = trigramTerms.get(trigram);
+                if (candidates != null) {
+                    for (String term : candidates) {
+                        overlaps.merge(term, 1, Integer::sum);
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> entry : overlaps.entrySet()) {
+                int shared = entry.getValue();
+                double similarity = (double) shared / (queryTrigrams.size() + trigrams(entry.getKey()).size() - shared);
+                Set<UUID> ids = terms.get(entry.getKey());
+                if (similarity >= MIN_SIMILARITY && ids != null) {
+                    for (UUID id : ids) {
+                        if (isVisible(id, leading, filter, visible, hidden)) {
+                            scores.merge(id, similarity, Math::max);
+                        }
+                    }
+                }
+            }
+        }
+
+        String first = words.get(0);
+        List<Suggestion> matches = new ArrayList<>();
+        Map<UUID, Double> ranked = new HashMap<>();
+        for (Map.Entry<UUID, Double> entry : scores.entrySet()) {
+            Suggestion suggestion = visible.get(entry.getKey());
+            double score = entry.getValue();
+            if (suggestion.getTerms().get(0).startsWith(first)) {
+                score += 1.0;
+            }
+            matches.add(suggestion);
+            ranked.put(suggestion.getId(), score);
+        }
+
+        matches.sort(Comparator.<Suggestion>comparingDouble(s -> ranked.get(s.getId())).reversed()
+            .thenComparingInt(s -> s.getLabel().length())
+            .thenComparing(Suggestion::getLabel));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private Set<UUID> registerTrigrams(String term) {
+        for (String trigram : trigrams(term)) {
+            trigramTerms.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(term);
+        }
+        return ConcurrentHashMap.newKeySet();
+    }
+
+    private void unlink(Suggestion suggestion) {
+        for (String term : suggestion.getTerms()) {
+            Set<UUID> ids = terms.get(term);
+            if (ids == null) {
+                continue;
+            }
+            ids.remove(suggestion.getId());
+            if (ids.isEmpty()) {
+                terms.remove(term);
+                for (String trigram : trigrams(term)) {
+                    Set<String> owners = trigramTerms.get(trigram);
+                    if (owners != null) {
+                        owners.remove(term);
+                        if (owners.isEmpty()) {
+                            trigramTerms.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the caller may see a label that contains every leading word, deciding each id
+     * once per query. Ids are resolved to the suggestion current at that moment, which is
+     * then the one returned.
+     */
+    private boolean isVisible(UUID id, List<String> leading, Predicate<Suggestion> filter,
+                              Map<UUID, Suggestion> visible, Set<UUID> hidden) {
+        if (visible.containsKey(id)) {
+            return true;
+        }
+        if (hidden.contains(id)) {
+            return false;
+        }
+        Suggestion suggestion = suggestions.get(id);
+        if (suggestion == null || !containsPrefixes(suggestion, leading) || !filter.test(suggestion)) {
+            hidden.add(id);
+            return false;
+        }
+        visible.put(id, suggestion);
+        return true;
+    }
+
+    private static boolean containsPrefixes(Suggestion suggestion, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String term : suggestion.getTerms()) {
+                if (term.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Trigrams of a term padded like pg_trgm (two leading blanks, one trailing), so short
+     * terms still produce trigrams and word starts weigh more than word ends.
+     */
+    static Set<String> trigrams(String term) {
+        String padded = "  " + term + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,49 @@
+package com.weave.search;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A label offered while the user is typing: a thread title, an entity title or a
+ * participant name. Thread and entity suggestions carry the thread they belong to
+ * so they can be scoped to the caller's threads.
+ */
+public final class Suggestion {
+    private final UUID id;
+    private final Type type;
+    private final String label;
+    private final UUID threadId;
+    private final List<String> terms;
+
+    public Suggestion(UUID id, Type type, String label, UUID threadId) {
+        this.id = id;
+        this.type = type;
+        this.label = label;
+        this.threadId = threadId;
+        this.terms = List.copyOf(Tokenizer.tokenize(label));
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+
+    List<String> getTerms() {
+        return terms;
+    }
+
+    public enum Type {
+        THREAD, ENTITY, USER
+    }
+}
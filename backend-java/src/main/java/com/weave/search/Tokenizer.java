@@ -0,0 +1,53 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits free text into lower-cased index terms.
+ * Terms are maximal runs of letters and digits; everything else is a separator.
+ */
+public final class Tokenizer {
+    // Longer runs are almost always URLs or pasted blobs, not searchable words
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Receives each term with the character range it was read from.
+     */
+    public interface TermConsumer {
+        void accept(String term, int start, int end);
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, (term, start, end) -> terms.add(term));
+        return terms;
+    }
+
+    /**
+     * Tokenizes like {@link #tokenize(String)}, also reporting where each term occurs in the text.
+     */
+    public static void tokenize(String text, TermConsumer consumer) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT), start, i);
+                }
+                start = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.weave.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k highest-scoring documents seen so far in a bounded min-heap,
+ * so ranking costs O(n log k) and never materializes the full match list.
+ * Ties are broken by newer timestamp first, then by id, so the order is total and a
+ * {@link SearchCursor} can resume exactly where a previous page ended.
+ */
+public class TopKCollector {
+    static final Comparator<ScoredDocument> ASCENDING = Comparator
+        .comparingDouble(ScoredDocument::getScore)
+        .thenComparingLong((ScoredDocument hit) -> hit.getDocument().getTimestamp())
+        .thenComparing(hit -> hit.getDocument().getId());
+
+    private final int k;
+    private final PriorityQueue<ScoredDocument> heap;
+    private final SearchCursor after;
+    private int totalHits;
+
+    public TopKCollector(int k) {
+        this(k, null);
+    }
+
+    /**
+     * @param after Only documents ranking after this cursor are collected; null for the first page
+     */
+    public TopKCollector(int k, SearchCursor after) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.min(k, 1024) + 1, ASCENDING);
+        this.after = after;
+    }
+
+    public void collect(SearchDocument document, double score) {
+        if (after != null && !after.admits(document, score)) {
+            return;
+        }
+        totalHits++;
+        offer(document, score);
+    }
+
+    /**
+     * @return An empty collector with the same size and cursor, for collecting part of a query in parallel
+     */
+    TopKCollector fork() {
+        return new TopKCollector(k, after);
+    }
+
+    /**
+     * Folds in the documents and hit count of a collector created by {@link #fork()}.
+     */
+    void merge(TopKCollector other) {
+        totalHits += other.totalHits;
+        for (ScoredDocument hit : other.heap) {
+            offer(hit.getDocument(), hit.getScore());
+        }
+    }
+
+    private void offer(SearchDocument document, double score) {
+        if (heap.size() < k) {
+            heap.add(new ScoredDocument(document, score));
+            return;
+        }
+        ScoredDocument weakest = heap.peek();
+        if (score > weakest.getScore()
+            || (score == weakest.getScore() && outranks(document, weakest.getDocument()))) {
+            heap.poll();
+            heap.add(new ScoredDocument(document, score));
+        }
+    }
+
+    /**
+     * @return Number of matching documents after the cursor offered to the collector, including those not kept
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return The kept documents, best first
+     */
+    public List<ScoredDocument> results() {
+        List<ScoredDocument> results = new ArrayList<>(heap);
+        results.sort(ASCENDING.reversed());
+        return results;
+    }
+
+    private static boolean outranks(SearchDocument document, SearchDocument other) {
+        if (document.getTimestamp() != other.getTimestamp()) {
+            return document.getTimestamp() > other.getTimestamp();
+        }
+        return document.getId().compareTo(other.getId()) > 0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.weave.service;
+
+import com.weave.dto.ExtractedEntityDTO;
+import com.weave.realtime.AfterCommitBatcher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs entity extraction for sent messages in the background, so sending a message costs
+ * only its own insert.
+ * <p>
+ * A message is queued once the transaction that saved it commits, so the worker always
+ * finds the row. A fixed pool of workers drains a bounded queue; when the queue is full the
+ * message is skipped rather than slowing the sender down, and can still be extracted
+ * through /v1/entities/extract. A failed extraction rolls back and is retried with backoff
+ * up to a fixed number of attempts. Extracted entities reach clients through the
+ * {@code entity_extracted} event.
+ */
+@Service
+public class EntityExtractionPipeline {
+    private static final Logger log = LoggerFactory.getLogger(EntityExtractionPipeline.class);
+
+    // First retry waits this long, doubling for each further attempt
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
+    private final EntityService entityService;
+    private final RealtimeNotificationService notificationService;
+    private final int maxAttempts;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().daemon().name("entity-extraction-retry").factory());
+    private final AfterCommitBatcher<Task> afterCommit = new AfterCommitBatcher<>(tasks -> tasks.forEach(this::enqueue));
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    private record Task(UUID messageId, UUID threadId, String content, int attempt) {
+    }
+
+    public EntityExtractionPipeline(
+            EntityService entityService,
+            RealtimeNotificationService notificationService,
+            MeterRegistry meterRegistry,
+            @Value("${weave.extraction.workers:2}") int workerCount,
+            @Value("${weave.extraction.queue-capacity:1000}") int queueCapacity,
+            @Value("${weave.extraction.max-attempts:3}") int maxAttempts) {
+        this.entityService = entityService;
+        this.notificationService = notificationService;
+        this.maxAttempts = maxAttempts;
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> Thread.ofPlatform().daemon().name("entity-extraction-" + workerNumber.incrementAndGet()).unstarted(runnable),
+            new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("entity.extraction.queued", workers, pool -> pool.getQueue().size())
+            .register(meterRegistry);
+        FunctionCounter.builder("entity.extraction", completed, AtomicLong::get)
+            .tag("result", "completed").register(meterRegistry);
+        FunctionCounter.builder("entity.extraction", failed, AtomicLong::get)
+            .tag("result", "failed").register(meterRegistry);
+        FunctionCounter.builder("entity.extraction", rejected, AtomicLong::get)
+            .tag("result", "rejected").register(meterRegistry);
+        FunctionCounter.builder("entity.extraction.retries", retried, AtomicLong::get)
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retries.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Entity extraction did not finish in {}s, {} messages left unextracted",
+                    SHUTDOWN_WAIT_SECONDS, workers.getQueue().size());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a message for extraction, once the current transaction commits if there is one.
+     * Never blocks.
+     * @param messageId The saved message
+     * @param threadId The message's thread, whose participants receive the entities
+     * @param content The text to extract from
+     */
+    public void submit(UUID messageId, UUID threadId, String content) {
+        afterCommit.add(new Task(messageId, threadId, content, 1));
+    }
+
+    /**
+     * Gets the number of messages waiting for a worker.
+     * @return Queued extractions
+     */
+    public int getQueuedCount() {
+        return workers.getQueue().size();
+    }
+
+    private void enqueue(Task task) {
+        try {
+            workers.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            log.warn("Entity extraction queue is full, skipping message {}", task.messageId());
+        }
+    }
+
+    private void run(Task task) {
+        List<ExtractedEntityDTO> entities;
+        try {
+            entities = entityService.extractFromMessage(task.messageId(), task.content());
+        } catch (RuntimeException e) {
+            retryOrGiveUp(task, e);
+            return;
+        }
+        completed.incrementAndGet();
+        if (entities.isEmpty()) {
+            return;
+        }
+        try {
+            notificationService.sendEventToThreadParticipants(task.threadId(), "entity_extracted", Map.of(
+                "entities", entities,
+                "messageId", task.messageId().toString(),
+                "threadId", task.threadId().toString()
+            ));
+        } catch (RuntimeException e) {
+            // The entities are saved; clients see them when they next load the thread
+            log.warn("Failed to send entity_extracted event for message {}: {}", task.messageId(), e.getMessage());
+        }
+    }
+
+    private void retryOrGiveUp(Task task, RuntimeException error) {
+        if (task.attempt() >= maxAttempts || retries.isShutdown()) {
+            failed.incrementAndGet();
+            log.error("Entity extraction for message {} failed after {} attempts: {}",
+                task.messageId(), task.attempt(), error.getMessage());
+            return;
+        }
+        retried.incrementAndGet();
+        long delay = RETRY_DELAY_MILLIS << (task.attempt() - 1);
+        log.warn("Entity extraction for message {} failed, retrying in {} ms: {}", task.messageId(), delay, error.getMessage());
+        Task next = new Task(task.messageId(), task.threadId(), task.content(), task.attempt() + 1);
+        try {
+            retries.schedule(() -> enqueue(next), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            failed.incrementAndGet();
+        }
+    }
+}
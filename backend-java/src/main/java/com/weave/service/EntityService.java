@@ -26,20 +26,26 @@ public class EntityService {
     private final ExtractedEntityRepository entityRepository;
     private final MessageRepository messageRepository;
     private final ThreadRepository threadRepository;
+    private final SearchService searchService;
+    private final SuggestService suggestService;
 
-    public EntityService(ExtractedEntityRepository entityRepository, MessageRepository messageRepository, ThreadRepository threadRepository) {
+    public EntityService(ExtractedEntityRepository entityRepository, MessageRepository messageRepository, ThreadRepository threadRepository, SearchService searchService, SuggestService suggestService) {
         this.entityRepository = entityRepository;
         this.messageRepository = messageRepository;
         this.threadRepository = threadRepository;
+        this.searchService = searchService;
+        this.suggestService = suggestService;
     }
     
+    /**
+     * Extracts entities from a message and saves them, owned by the message's sender.
+     * Does not depend on the current user, so it can run on background workers.
+     */
     @Transactional
     public List<ExtractedEntityDTO> extractFromMessage(UUID messageId, String content) {
         Message message = messageRepository.findById(messageId)
             .orElseThrow(() -> new RuntimeException("Message not found: " + messageId));
         
-        User currentUser = SecurityUtils.getCurrentUser()
-            .orElseThrow(() -> new RuntimeException("User not authenticated"));
         List<ExtractedEntity> entities = new ArrayList<>();
         
         // Simple ML stub - extract plans, decisions, promises
@@ -84,6 +90,9 @@ public class EntityService {
             entities.add(entityRepository.save(entity));
         }
         
+        entities.forEach(searchService::indexEntity);
+        entities.forEach(suggestService::addEntity);
+        
         return entities.stream().map(this::toDTO).collect(Collectors.toList());
     }
     
@@ -157,6 +166,7 @@ public class EntityService {
         entity.setLastTouchedBy(currentUser);
         
         entity = entityRepository.save(entity);
+        searchService.invalidateThread(entity.getThread().getId());
         return toDTO(entity);
     }
 
@@ -20,11 +20,13 @@ public class GroupService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final UserRepository userRepository;
+    private final RealtimeNotificationService notificationService;
 
-    public GroupService(GroupRepository groupRepository, GroupMemberRepository groupMemberRepository, UserRepository userRepository) {
+    public GroupService(GroupRepository groupRepository, GroupMemberRepository groupMemberRepository, UserRepository userRepository, RealtimeNotificationService notificationService) {
         this.groupRepository = groupRepository;
         this.groupMemberRepository = groupMemberRepository;
         this.userRepository = userRepository;
+        this.notificationService = notificationService;
     }
 
     @Transactional
@@ -122,6 +124,7 @@ public class GroupService {
         member.setUser(userToAdd);
         member.setRole(GroupMember.MemberRole.MEMBER);
         groupMemberRepository.save(member);
+        notificationService.refreshSubscriptions(userId);
     }
 
     @Transactional
@@ -141,6 +144,7 @@ public class GroupService {
         }
 
         groupMemberRepository.delete(memberToRemove);
+        notificationService.refreshSubscriptions(userId);
     }
 
     @Transactional
@@ -164,6 +168,7 @@ public class GroupService {
         }
 
         groupMemberRepository.delete(member);
+        notificationService.refreshSubscriptions(currentUser.getId());
     }
 
     private GroupDTO toDTO(Group group) {
@@ -1,8 +1,8 @@
 package com.weave.service;
 
-import com.weave.dto.ExtractedEntityDTO;
 import com.weave.dto.FileAttachmentDTO;
 import com.weave.dto.MessageDTO;
+import com.weave.dto.MessagePageDTO;
 import com.weave.dto.SendMessageRequest;
 import com.weave.dto.SendMessageResponse;
 import com.weave.model.FileAttachment;
@@ -10,13 +10,21 @@ import com.weave.model.Message;
 import com.weave.model.Thread;
 import com.weave.model.User;
 import com.weave.repository.MessageRepository;
+import com.weave.repository.MessageRepository.MessageEntityLink;
 import com.weave.repository.ThreadRepository;
+import com.weave.util.MessageCursor;
 import com.weave.util.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -24,18 +32,22 @@ import java.util.stream.Collectors;
 
 @Service
 public class MessageService {
+    private static final Logger log = LoggerFactory.getLogger(MessageService.class);
+
     private final MessageRepository messageRepository;
     private final ThreadRepository threadRepository;
     private final ThreadService threadService;
-    private final EntityService entityService;
+    private final EntityExtractionPipeline extractionPipeline;
     private final RealtimeNotificationService notificationService;
+    private final SearchService searchService;
 
-    public MessageService(MessageRepository messageRepository, ThreadRepository threadRepository, ThreadService threadService, EntityService entityService, RealtimeNotificationService notificationService) {
+    public MessageService(MessageRepository messageRepository, ThreadRepository threadRepository, ThreadService threadService, EntityExtractionPipeline extractionPipeline, RealtimeNotificationService notificationService, SearchService searchService) {
         this.messageRepository = messageRepository;
         this.threadRepository = threadRepository;
         this.threadService = threadService;
-        this.entityService = entityService;
+        this.extractionPipeline = extractionPipeline;
         this.notificationService = notificationService;
+        this.searchService = searchService;
     }
     
     @Transactional
@@ -63,19 +75,16 @@ public class MessageService {
         message.setTimestamp(Instant.now());
         
         message = messageRepository.save(message);
+        searchService.indexMessage(message);
         
         thread.setLastActivity(Instant.now());
         threadRepository.save(thread);
         threadService.updateThreadActivity(thread.getId());
         
-        List<ExtractedEntityDTO> extractedEntities = new ArrayList<>();
-        if (request.getContent() != null && !request.getContent().isEmpty()) {
-            extractedEntities = entityService.extractFromMessage(message.getId(), request.getContent());
-        }
-        
         MessageDTO messageDTO = toDTO(message);
         var updatedThreadDTO = threadService.toDTO(thread);
         
+        // Held until this transaction commits, then dispatched together as one batch
         try {
             Map<String, Object> messageEvent = Map.of(
                 "message", messageDTO,
@@ -83,39 +92,98 @@ public class MessageService {
             );
             notificationService.sendEventToThreadParticipants(thread.getId(), "message_created", messageEvent);
             
-            if (!extractedEntities.isEmpty()) {
-                Map<String, Object> entityEvent = Map.of(
-                    "entities", extractedEntities,
-                    "messageId", message.getId().toString(),
-                    "threadId", thread.getId().toString()
-                );
-                notificationService.sendEventToThreadParticipants(thread.getId(), "entity_extracted", entityEvent);
-            }
-            
             Map<String, Object> threadEvent = Map.of(
                 "thread", updatedThreadDTO,
                 "threadId", thread.getId().toString()
             );
-            notificationService.sendEventToThreadParticipants(thread.getId(), "thread_updated", threadEvent);
+            // Bursts of messages collapse into one thread_updated carrying the latest state
+            notificationService.sendLatestEventToThreadParticipants(thread.getId(), "thread_updated", threadEvent);
         } catch (Exception e) {
-            System.err.println("Failed to send SSE event: " + e.getMessage());
+            log.warn("Failed to send realtime events for message {}: {}", message.getId(), e.getMessage());
         }
         
+        // Queued after the events above so that, once this commits, message_created is dispatched
+        // before extraction starts; entities then arrive through the entity_extracted event
+        if (request.getContent() != null && !request.getContent().isEmpty()) {
+            extractionPipeline.submit(message.getId(), thread.getId(), request.getContent());
+        }
+        
+        // Extraction has not run yet, so there are never entities to return here
         return new SendMessageResponse(
             messageDTO,
-            extractedEntities,
+            List.of(),
             updatedThreadDTO
         );
     }
     
-    public List<MessageDTO> getMessagesByThread(UUID threadId) {
-        return messageRepository.findByThreadIdOrderByTimestampAsc(threadId)
-            .stream()
-            .map(this::toDTO)
+    /**
+     * Gets one page of a thread's history, oldest message first. Without a cursor this is
+     * the newest page; clients then page back with {@code before}. Each page is one query.
+     * @param before Cursor from a page's olderCursor, for the messages just before it
+     * @param after Cursor from a page's newerCursor, for the messages just after it
+     * @param limit Maximum number of messages in the page
+     * @throws IllegalArgumentException If both cursors are given or a cursor is malformed
+     */
+    @Transactional(readOnly = true)
+    public MessagePageDTO getMessagePage(UUID threadId, String before, String after, int limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Pass either before or after, not both");
+        }
+        // One row more than the page tells whether another page follows in that direction
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        
+        if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            List<Message> messages = messageRepository.findInThreadAfter(threadId, cursor.getTimestamp(), cursor.getId(), pageable);
+            boolean hasNewer = messages.size() > limit;
+            List<Message> page = hasNewer ? messages.subList(0, limit) : messages;
+            // The cursor's own message precedes this page
+            String olderCursor = page.isEmpty() ? after : MessageCursor.of(page.get(0)).encode();
+            String newerCursor = hasNewer ? MessageCursor.of(page.get(page.size() - 1)).encode() : null;
+            return new MessagePageDTO(toDTOs(page), olderCursor, newerCursor);
+        }
+        
+        List<Message> messages;
+        if (before != null) {
+            MessageCursor cursor = MessageCursor.decode(before);
+            messages = messageRepository.findInThreadBefore(threadId, cursor.getTimestamp(), cursor.getId(), pageable);
+        } else {
+            messages = messageRepository.findLatestInThread(threadId, pageable);
+        }
+        boolean hasOlder = messages.size() > limit;
+        List<Message> page = new ArrayList<>(hasOlder ? messages.subList(0, limit) : messages);
+        Collections.reverse(page);
+        String olderCursor = hasOlder ? MessageCursor.of(page.get(0)).encode() : null;
+        // The newest page has nothing after it; an older page is followed at least by the cursor's message
+        String newerCursor = before == null ? null
+            : page.isEmpty() ? before : MessageCursor.of(page.get(page.size() - 1)).encode();
+        return new MessagePageDTO(toDTOs(page), olderCursor, newerCursor);
+    }
+    
+    /**
+     * Converts a page of messages, loading all of their entity IDs in a single query.
+     */
+    private List<MessageDTO> toDTOs(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, List<UUID>> entityIds = new HashMap<>();
+        List<UUID> messageIds = messages.stream().map(Message::getId).collect(Collectors.toList());
+        for (MessageEntityLink link : messageRepository.findEntityLinksByMessageIds(messageIds)) {
+            entityIds.computeIfAbsent(link.getMessageId(), id -> new ArrayList<>()).add(link.getEntityId());
+        }
+        return messages.stream()
+            .map(message -> toDTO(message, entityIds.getOrDefault(message.getId(), List.of())))
             .collect(Collectors.toList());
     }
     
     public MessageDTO toDTO(Message message) {
+        return toDTO(message, message.getEntities().stream()
+            .map(e -> e.getId())
+            .collect(Collectors.toList()));
+    }
+    
+    private MessageDTO toDTO(Message message, List<UUID> entityIds) {
         List<FileAttachmentDTO> fileAttachmentDTOs = null;
         if (message.getFileAttachments() != null) {
             fileAttachmentDTOs = message.getFileAttachments().stream()
@@ -133,9 +201,7 @@ public class MessageService {
             message.getWaveform(),
             fileAttachmentDTOs,
             message.getTimestamp(),
-            message.getEntities().stream()
-                .map(e -> e.getId())
-                .collect(Collectors.toList())
+            entityIds
         );
     }
 }
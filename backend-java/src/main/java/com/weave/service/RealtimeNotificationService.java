@@ -1,124 +1,401 @@
 package com.weave.service;
 
-import com.weave.model.ThreadParticipant;
 import com.weave.model.User;
+import com.weave.realtime.AfterCommitBatcher;
+import com.weave.realtime.BusMessage;
+import com.weave.realtime.EventBus;
+import com.weave.realtime.EventCoalescer;
+import com.weave.realtime.EventId;
+import com.weave.realtime.EventReplayBuffer;
+import com.weave.realtime.ExpiringState;
+import com.weave.realtime.HeartbeatWheel;
+import com.weave.realtime.PresenceStatus;
+import com.weave.realtime.RateLimiter;
+import com.weave.realtime.ReactiveRealtimeSession;
+import com.weave.realtime.RealtimeEvent;
+import com.weave.realtime.RealtimeSession;
+import com.weave.realtime.SseSession;
+import com.weave.realtime.ThreadSubscriberIndex;
+import com.weave.realtime.WebSocketRealtimeSession;
 import com.weave.repository.ThreadParticipantRepository;
 import com.weave.util.SecurityUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import tools.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
- * Service for managing Server-Sent Events (SSE) connections for real-time updates.
- * Maintains active SSE connections per user and broadcasts events to connected clients.
+ * Service for managing Server-Sent Events (SSE) and WebSocket connections for real-time updates.
+ * Each user may hold several sessions at once (one per tab or device), over either transport, up to a
+ * per-user cap; events addressed to a user are delivered to all of their sessions.
+ * <p>
+ * Sending only enqueues: each session has a bounded outbound queue drained on a virtual
+ * thread, so callers such as {@link MessageService#sendMessage} never wait on a slow client.
+ * Each event is serialized to JSON once, whatever the number of recipients, and the
+ * resulting {@link RealtimeEvent} bytes are shared by every session it is queued on.
+ * <p>
+ * Every delivered event gets an increasing ID and is kept in a small per-user
+ * {@link EventReplayBuffer}, which outlives the user's sessions by a retention period, so a
+ * client reconnecting with {@code Last-Event-ID} receives just the events it missed.
+ * <p>
+ * Thread fan-out reads a {@link ThreadSubscriberIndex} of the threads each such user takes
+ * part in. It is loaded once when a user first connects and then kept current through
+ * {@link #addThreadParticipant}, {@link #removeThreadParticipant} and
+ * {@link #refreshSubscriptions}, so sending an event makes no database calls.
+ * <p>
+ * Every send and membership change is applied locally and published once on the
+ * {@link EventBus} with the payload already encoded; other nodes apply it to the sessions
+ * and index they hold, so clients can connect to any replica. Event IDs are assigned by the
+ * node that delivers the event, since replay buffers are per node, and tagged with its
+ * epoch, so a client resuming on another node resynchronizes.
+ * <p>
+ * Sends and membership changes made inside a transaction are held back until it commits,
+ * so clients never see data they cannot yet read, and are then dispatched together as one
+ * batch: delivered locally, then published to the bus in a single call on the dispatcher,
+ * so the committing thread never waits on bus I/O. They are dropped if the transaction
+ * rolls back. A batch the bus fails to take is retried with backoff, so
+ * other nodes receive it at least once.
+ * <p>
+ * State snapshots that supersede each other, such as {@code thread_updated}, can be sent
+ * through {@link #sendLatestEventToThreadParticipants}, which keeps only the newest one per
+ * thread within a short window before fanning it out.
+ * <p>
+ * A single {@link HeartbeatWheel} on the shared scheduler visits every session once per
+ * heartbeat interval: quiet sessions get a keep-alive, so proxies do not time them out and
+ * dead clients surface as write failures, and sessions whose writes have been stuck for the
+ * reap timeout are closed. Session, reap, heartbeat and delivery latency figures are
+ * exported as {@code realtime.*} meters.
+ * <p>
+ * Typing indicators and presence are ephemeral: their state lives only in
+ * {@link ExpiringState} maps on the node the user is connected to, and their events are
+ * fanned out to thread subscribers without an ID or replay buffering. Nothing about them
+ * touches the database. Only changes are announced, so a client repeating "typing" while
+ * the user types costs one event, and each user's announcements are rate limited.
  */
 @Service
 public class RealtimeNotificationService {
-    // Map of userId -> SseEmitter for active connections
-    private final Map<UUID, SseEmitter> activeConnections = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(RealtimeNotificationService.class);
+    
+    // Map of userId -> open sessions, oldest first. Lists are replaced, never mutated,
+    // so senders can iterate them without locking
+    private final Map<UUID, List<RealtimeSession>> activeConnections = new ConcurrentHashMap<>();
+    
+    // Map of userId -> recent events, for connected and recently disconnected users.
+    // Appending and queueing an event happen under the buffer's monitor so a replay on
+    // reconnect cannot interleave with live events
+    private final Map<UUID, EventReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+    
+    // Threads of every user with a replay buffer; subscribed and unsubscribed together with it
+    private final ThreadSubscriberIndex subscriberIndex = new ThreadSubscriberIndex();
+    
+    // Sequence part of event IDs; only comparable within this node's epoch
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final AtomicLong lastReplaySweep = new AtomicLong();
+    private final AtomicLong reapedSessions = new AtomicLong();
+    private final AtomicLong heartbeatsSent = new AtomicLong();
+    private final AtomicLong ephemeralLimited = new AtomicLong();
+    private final AtomicLong busRetries = new AtomicLong();
+    private final AtomicLong busFailures = new AtomicLong();
+    
+    // Bus messages, and coalescer submissions, of the current transaction until it commits
+    private final AfterCommitBatcher<BusMessage> outbox = new AfterCommitBatcher<>(this::dispatch);
+    private final AfterCommitBatcher<Runnable> afterCommit = new AfterCommitBatcher<>(actions -> actions.forEach(Runnable::run));
+    
+    // Identifies this node's messages on the event bus so they are not applied twice
+    private final UUID nodeId = UUID.randomUUID();
+    // Tags this process's event IDs, so a Last-Event-ID from another node or an earlier run is never compared
+    private final String epoch = Long.toString(nodeId.getMostSignificantBits() & Long.MAX_VALUE, Character.MAX_RADIX);
     
     private final ThreadParticipantRepository threadParticipantRepository;
+    private final ObjectMapper objectMapper;
+    private final EventBus eventBus;
+    private final int maxSessionsPerUser;
+    private final int sessionQueueCapacity;
+    private final RealtimeSession.OverflowPolicy overflowPolicy;
+    private final int replayBufferSize;
+    private final long replayRetentionMillis;
+    private final long coalesceWindowMillis;
+    private final long heartbeatIntervalMillis;
+    private final long reapAfterMillis;
+    private final HeartbeatWheel heartbeatWheel = new HeartbeatWheel(HEARTBEAT_SLOTS);
+    private final Timer deliveryTimer;
+    private final ExpiringState<TypingKey, Boolean> typing;
+    private final ExpiringState<UUID, PresenceStatus> presence;
+    private final RateLimiter<UUID> ephemeralLimiter;
+    private final Map<String, EventCoalescer<UUID, Object>> coalescers = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().daemon().name("realtime-scheduler").factory());
     
     // Default timeout: 30 minutes (matches typical session timeout)
     private static final long DEFAULT_TIMEOUT = 30 * 60 * 1000L;
     
-    public RealtimeNotificationService(ThreadParticipantRepository threadParticipantRepository) {
+    // Heartbeat checks are spread over this many ticks per interval
+    private static final int HEARTBEAT_SLOTS = 10;
+    
+    // How often lapsed typing indicators and presence are expired and announced
+    private static final long EPHEMERAL_SWEEP_MILLIS = 1000;
+    
+    // Attempts to publish a batch to the bus, the retries waiting 0.5s, 1s, 2s and 4s
+    private static final int BUS_PUBLISH_ATTEMPTS = 5;
+    private static final long BUS_RETRY_DELAY_MILLIS = 500;
+    
+    private record TypingKey(UUID threadId, UUID userId) {
+    }
+    
+    public RealtimeNotificationService(
+            ThreadParticipantRepository threadParticipantRepository,
+            ObjectMapper objectMapper,
+            EventBus eventBus,
+            MeterRegistry meterRegistry,
+            @Value("${weave.realtime.max-sessions-per-user:5}") int maxSessionsPerUser,
+            @Value("${weave.realtime.session-queue-capacity:256}") int sessionQueueCapacity,
+            @Value("${weave.realtime.overflow-policy:disconnect}") String overflowPolicy,
+            @Value("${weave.realtime.replay-buffer-size:128}") int replayBufferSize,
+            @Value("${weave.realtime.replay-retention-seconds:300}") long replayRetentionSeconds,
+            @Value("${weave.realtime.coalesce-window-millis:150}") long coalesceWindowMillis,
+            @Value("${weave.realtime.heartbeat-interval-seconds:25}") long heartbeatIntervalSeconds,
+            @Value("${weave.realtime.reap-after-seconds:90}") long reapAfterSeconds,
+            @Value("${weave.realtime.typing-ttl-seconds:6}") long typingTtlSeconds,
+            @Value("${weave.realtime.presence-ttl-seconds:90}") long presenceTtlSeconds,
+            @Value("${weave.realtime.ephemeral-events-per-second:2}") double ephemeralEventsPerSecond,
+            @Value("${weave.realtime.ephemeral-burst:6}") int ephemeralBurst) {
         this.threadParticipantRepository = threadParticipantRepository;
+        this.objectMapper = objectMapper;
+        this.eventBus = eventBus;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.sessionQueueCapacity = sessionQueueCapacity;
+        this.overflowPolicy = RealtimeSession.OverflowPolicy.valueOf(overflowPolicy.toUpperCase().replace('-', '_'));
+        this.replayBufferSize = replayBufferSize;
+        this.replayRetentionMillis = replayRetentionSeconds * 1000;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.heartbeatIntervalMillis = heartbeatIntervalSeconds * 1000;
+        this.reapAfterMillis = reapAfterSeconds * 1000;
+        this.typing = new ExpiringState<>(typingTtlSeconds * 1000);
+        this.presence = new ExpiringState<>(presenceTtlSeconds * 1000);
+        this.ephemeralLimiter = new RateLimiter<>(ephemeralEventsPerSecond, ephemeralBurst);
+        
+        Gauge.builder("realtime.sessions", this, RealtimeNotificationService::getActiveConnectionCount)
+            .register(meterRegistry);
+        Gauge.builder("realtime.users", this, RealtimeNotificationService::getConnectedUserCount)
+            .register(meterRegistry);
+        Gauge.builder("realtime.queued", this, RealtimeNotificationService::getQueuedEventCount)
+            .register(meterRegistry);
+        FunctionCounter.builder("realtime.sessions.reaped", reapedSessions, AtomicLong::get)
+            .register(meterRegistry);
+        FunctionCounter.builder("realtime.heartbeats", heartbeatsSent, AtomicLong::get)
+            .register(meterRegistry);
+        Gauge.builder("realtime.typing", typing, ExpiringState::size)
+            .register(meterRegistry);
+        Gauge.builder("realtime.presence", presence, ExpiringState::size)
+            .register(meterRegistry);
+        FunctionCounter.builder("realtime.ephemeral.limited", ephemeralLimited, AtomicLong::get)
+            .register(meterRegistry);
+        FunctionCounter.builder("realtime.bus.retries", busRetries, AtomicLong::get)
+            .register(meterRegistry);
+        FunctionCounter.builder("realtime.bus.failures", busFailures, AtomicLong::get)
+            .register(meterRegistry);
+        this.deliveryTimer = Timer.builder("realtime.delivery")
+            .description("Time from encoding an event to writing it to a session")
+            .register(meterRegistry);
+        
+        eventBus.subscribe(this::onBusMessage);
+        if (heartbeatIntervalMillis > 0) {
+            long tick = Math.max(1, heartbeatIntervalMillis / HEARTBEAT_SLOTS);
+            scheduler.scheduleAtFixedRate(this::heartbeatTick, tick, tick, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(this::expireEphemeralState, EPHEMERAL_SWEEP_MILLIS, EPHEMERAL_SWEEP_MILLIS,
+            TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        activeConnections.values().forEach(sessions -> sessions.forEach(RealtimeSession::close));
+        scheduler.shutdownNow();
+        dispatcher.shutdown();
     }
     
     /**
-     * Creates a new SSE connection for the current user.
+     * Opens a new SSE session for the current user alongside any they already have.
+     * If this takes the user over the session cap, their oldest session is closed.
+     * @param lastEventId ID of the last event the client received, or null for a fresh start;
+     *                    events after it are replayed if it was issued by this node and they
+     *                    are still buffered, otherwise the {@code connected} event carries
+     *                    {@code resync: true}
      * @return SseEmitter that the client can subscribe to
      */
-    public SseEmitter createConnection() {
+    public SseEmitter createConnection(String lastEventId) {
         User currentUser = SecurityUtils.getCurrentUser()
             .orElseThrow(() -> new RuntimeException("User not authenticated"));
         
         UUID userId = currentUser.getId();
         
-        // Remove any existing connection for this user
-        SseEmitter existing = activeConnections.remove(userId);
-        if (existing != null) {
-            try {
-                existing.complete();
-            } catch (Exception e) {
-                // Ignore errors when cleaning up old connection
-            }
-        }
-        
         // Create new SSE emitter with timeout
         SseEmitter emitter = new SseEmitter(DEFAULT_TIMEOUT);
+        SseSession session = new SseSession(userId, emitter, sessionQueueCapacity, overflowPolicy, dispatcher, this::removeSession);
         
         // Handle completion (client disconnected)
-        emitter.onCompletion(() -> {
-            activeConnections.remove(userId);
-        });
+        emitter.onCompletion(session::close);
         
         // Handle timeout
-        emitter.onTimeout(() -> {
-            activeConnections.remove(userId);
-            try {
-                emitter.complete();
-            } catch (Exception e) {
-                // Ignore
-            }
-        });
+        emitter.onTimeout(session::close);
         
         // Handle error
-        emitter.onError((ex) -> {
-            activeConnections.remove(userId);
-            try {
-                emitter.completeWithError(ex);
-            } catch (Exception e) {
-                // Ignore
-            }
-        });
+        emitter.onError(session::closeWithError);
         
-        activeConnections.put(userId, emitter);
+        register(session, lastEventId);
+        return emitter;
+    }
+    
+    /**
+     * Opens a new session for the current user delivered as a reactive stream, with the same
+     * events, replay and session cap as {@link #createConnection}. The session ends when the
+     * subscriber cancels, and it only writes as fast as the subscriber requests.
+     * @param lastEventId ID of the last event the client received, or null for a fresh start
+     * @return Events to stream to the client
+     */
+    public Flux<ServerSentEvent<String>> createReactiveConnection(String lastEventId) {
+        User currentUser = SecurityUtils.getCurrentUser()
+            .orElseThrow(() -> new RuntimeException("User not authenticated"));
         
-        // Send initial connection event
-        try {
-            emitter.send(SseEmitter.event()
-                .name("connected")
-                .data(Map.of("status", "connected", "userId", userId.toString())));
-        } catch (IOException e) {
-            activeConnections.remove(userId);
-            emitter.completeWithError(e);
-            throw new RuntimeException("Failed to send initial SSE event", e);
+        ReactiveRealtimeSession session = new ReactiveRealtimeSession(currentUser.getId(), sessionQueueCapacity,
+            overflowPolicy, dispatcher, this::removeSession);
+        register(session, lastEventId);
+        return session.getEvents();
+    }
+    
+    /**
+     * Opens a realtime session over an established WebSocket, with the same events, replay
+     * and session cap as SSE.
+     * @param userId The user authenticated at handshake
+     * @param binary Whether to send binary frames instead of JSON text envelopes
+     * @param lastEventId ID of the last event the client received, or null for a fresh start
+     * @return The session; close it when the socket closes
+     */
+    public RealtimeSession openWebSocketSession(UUID userId, WebSocketSession socket, boolean binary, String lastEventId) {
+        RealtimeSession session = new WebSocketRealtimeSession(userId, socket, binary, sessionQueueCapacity,
+            overflowPolicy, dispatcher, this::removeSession);
+        register(session, lastEventId);
+        return session;
+    }
+    
+    /**
+     * Adds a session alongside the user's others, closing the oldest if this exceeds the cap,
+     * and queues the {@code connected} event followed by any replay.
+     */
+    private void register(RealtimeSession session, String lastEventId) {
+        UUID userId = session.getUserId();
+        boolean resuming = lastEventId != null && !lastEventId.isBlank();
+        EventId resumeFrom = resuming ? EventId.parse(lastEventId) : null;
+        if (resumeFrom != null && !resumeFrom.getEpoch().equals(epoch)) {
+            // Issued by another node or before a restart; its sequence means nothing here
+            resumeFrom = null;
         }
+        sweepReplayBuffers(System.currentTimeMillis());
+        session.observeDeliveries(latency -> deliveryTimer.record(latency, TimeUnit.NANOSECONDS));
+        heartbeatWheel.add(session);
         
-        return emitter;
+        // Load the user's threads outside any lock; usually they are already indexed
+        long indexVersion = subscriberIndex.version();
+        List<UUID> threadIds = subscriberIndex.isSubscribed(userId)
+            ? null
+            : threadParticipantRepository.findThreadIdsByUserId(userId);
+        
+        List<RealtimeSession> evicted = new ArrayList<>();
+        while (true) {
+            EventReplayBuffer buffer = replayBuffers.computeIfAbsent(userId,
+                id -> new EventReplayBuffer(replayBufferSize, eventSequence.get()));
+            synchronized (buffer) {
+                if (buffer.isRetired()) {
+                    // Lost a race with the sweeper; the next lookup creates a fresh buffer
+                    continue;
+                }
+                activeConnections.compute(userId, (id, sessions) -> {
+                    List<RealtimeSession> updated = sessions != null ? new ArrayList<>(sessions) : new ArrayList<>();
+                    updated.add(session);
+                    while (updated.size() > maxSessionsPerUser) {
+                        evicted.add(updated.remove(0));
+                    }
+                    return List.copyOf(updated);
+                });
+                buffer.setIdleSince(0);
+                if (!subscriberIndex.isSubscribed(userId)) {
+                    if (threadIds == null || subscriberIndex.version() != indexVersion) {
+                        // Swept meanwhile, or membership changed while loading; reload to be exact
+                        threadIds = threadParticipantRepository.findThreadIdsByUserId(userId);
+                    }
+                    subscriberIndex.subscribe(userId, threadIds);
+                }
+                
+                List<RealtimeEvent> missed;
+                if (!resuming) {
+                    missed = List.of();
+                } else if (resumeFrom == null) {
+                    missed = null;
+                } else {
+                    missed = buffer.since(resumeFrom.getSequence());
+                    if (missed != null && missed.size() >= sessionQueueCapacity) {
+                        // Would overflow the new session's queue
+                        missed = null;
+                    }
+                }
+                
+                // Send initial connection event, then whatever the client missed
+                session.enqueue(RealtimeEvent.encode("connected", Map.of(
+                    "status", "connected",
+                    "userId", userId.toString(),
+                    "sessionId", session.getId().toString(),
+                    "replayed", missed != null ? missed.size() : 0,
+                    "resync", missed == null), objectMapper));
+                if (missed != null) {
+                    missed.forEach(session::enqueue);
+                }
+            }
+            break;
+        }
+        if (!evicted.isEmpty()) {
+            log.debug("User {} exceeded {} realtime sessions, closing {} oldest", userId, maxSessionsPerUser, evicted.size());
+            evicted.forEach(RealtimeSession::close);
+        }
+        if (presence.get(userId, System.currentTimeMillis()) == null) {
+            // First session here, or presence lapsed; an away user opening another tab stays away
+            announcePresence(userId, PresenceStatus.ONLINE);
+        }
     }
     
     /**
-     * Sends an event to a specific user.
+     * Sends an event to every open session of a specific user.
      * @param userId The user ID to send the event to
      * @param eventName The name of the event
      * @param data The data to send (will be serialized as JSON)
      */
     public void sendEvent(UUID userId, String eventName, Object data) {
-        SseEmitter emitter = activeConnections.get(userId);
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event()
-                    .name(eventName)
-                    .data(data));
-            } catch (IOException e) {
-                // Connection closed, remove it
-                activeConnections.remove(userId);
-                try {
-                    emitter.completeWithError(e);
-                } catch (Exception ex) {
-                    // Ignore
-                }
-            }
-        }
+        publish(BusMessage.event(BusMessage.Kind.USER, nodeId, userId, eventName, objectMapper.writeValueAsBytes(data)));
     }
     
     /**
@@ -126,64 +403,481 @@ public class RealtimeNotificationService {
      * @param threadId The thread ID
      * @param eventName The name of the event
      * @param data The data to send
-     * Note: This method should be called from within a transactional context to ensure
-     * LAZY-loaded relationships (e.g., ThreadParticipant.getUser()) are accessible.
+     * Note: Participants are read from the in-memory subscriber index, so no transaction is needed.
      */
     public void sendEventToThreadParticipants(UUID threadId, String eventName, Object data) {
-        // Get all participant IDs for this thread
-        // Note: This method is typically called from an already transactional context (MessageService)
-        List<ThreadParticipant> participants = threadParticipantRepository.findByThreadId(threadId);
-        List<UUID> participantIds = participants.stream()
-            .map(participant -> participant.getUser().getId())
-            .collect(Collectors.toList());
-        
-        // Send event to each connected participant
-        participantIds.forEach(userId -> sendEvent(userId, eventName, data));
+        publish(BusMessage.event(BusMessage.Kind.THREAD, nodeId, threadId, eventName, objectMapper.writeValueAsBytes(data)));
     }
     
     /**
-     * Broadcasts an event to all connected users.
+     * Sends a thread event whose payload is a full state snapshot, coalescing bursts.
+     * Within the coalescing window only the last payload per thread and event name is sent,
+     * after the window closes; a window of 0 sends immediately. Inside a transaction the
+     * payload enters the window only once the transaction commits.
+     * @param threadId The thread ID
      * @param eventName The name of the event
-     * @param data The data to send
+     * @param data The latest state; must not depend on an open transaction, since it is
+     *             serialized after the caller returns
      */
-    public void broadcastEvent(String eventName, Object data) {
-        activeConnections.forEach((userId, emitter) -> {
-            try {
-                emitter.send(SseEmitter.event()
-                    .name(eventName)
-                    .data(data));
-            } catch (IOException e) {
-                // Connection closed, remove it
-                activeConnections.remove(userId);
+    public void sendLatestEventToThreadParticipants(UUID threadId, String eventName, Object data) {
+        if (coalesceWindowMillis <= 0) {
+            sendEventToThreadParticipants(threadId, eventName, data);
+            return;
+        }
+        EventCoalescer<UUID, Object> coalescer = coalescers.computeIfAbsent(eventName,
+            name -> new EventCoalescer<>(scheduler, coalesceWindowMillis, (id, latest) -> {
                 try {
-                    emitter.completeWithError(e);
-                } catch (Exception ex) {
-                    // Ignore
+                    sendEventToThreadParticipants(id, name, latest);
+                } catch (Exception e) {
+                    log.warn("Failed to send coalesced {} event for thread {}: {}", name, id, e.getMessage());
                 }
+            }));
+        afterCommit.add(() -> coalescer.submit(threadId, data));
+    }
+    
+    /**
+     * Shows or clears a user's typing indicator in a thread. Showing one that is already shown
+     * only extends it; an indicator not renewed within the typing TTL is cleared by itself.
+     * Nothing is persisted.
+     * @param threadId A thread the user participates in
+     * @param isTyping Whether the user is typing; clients repeat {@code true} while they are
+     * @return false if the indicator was not shown because the user is over their rate limit
+     */
+    public boolean updateTyping(UUID threadId, UUID userId, boolean isTyping) {
+        long now = System.currentTimeMillis();
+        TypingKey key = new TypingKey(threadId, userId);
+        if (!isTyping) {
+            if (typing.remove(key) != null) {
+                sendEphemeral(threadId, "typing", typingPayload(key, false));
             }
-        });
+            return true;
+        }
+        if (typing.refresh(key, now)) {
+            return true;
+        }
+        if (!ephemeralLimiter.tryAcquire(userId, now)) {
+            ephemeralLimited.incrementAndGet();
+            return false;
+        }
+        typing.put(key, Boolean.TRUE, now);
+        sendEphemeral(threadId, "typing", typingPayload(key, true));
+        return true;
+    }
+    
+    /**
+     * Sets a connected user's presence as chosen by their client, announcing it to the
+     * participants of each of their threads if it changed. Nothing is persisted.
+     * @param status {@link PresenceStatus#ONLINE} or {@link PresenceStatus#AWAY}
+     * @return false if the change was not announced because the user is over their rate limit
+     */
+    public boolean updatePresence(UUID userId, PresenceStatus status) {
+        if (status == PresenceStatus.OFFLINE) {
+            throw new IllegalArgumentException("Presence becomes offline by disconnecting");
+        }
+        if (!activeConnections.containsKey(userId)) {
+            throw new IllegalArgumentException("Presence requires an open realtime session");
+        }
+        long now = System.currentTimeMillis();
+        if (presence.get(userId, now) == status) {
+            presence.refresh(userId, now);
+            return true;
+        }
+        if (!ephemeralLimiter.tryAcquire(userId, now)) {
+            ephemeralLimited.incrementAndGet();
+            return false;
+        }
+        announcePresence(userId, status);
+        return true;
+    }
+    
+    /**
+     * Gets a user's presence as known to this node.
+     * @return The user's status; {@link PresenceStatus#OFFLINE} unless they are connected here
+     */
+    public PresenceStatus getPresence(UUID userId) {
+        PresenceStatus status = presence.get(userId, System.currentTimeMillis());
+        return status != null ? status : PresenceStatus.OFFLINE;
+    }
+    
+    /**
+     * Checks membership against the subscriber index, without a database call.
+     * Only meaningful for users with an open session, such as the sender of a client message.
+     * @return Whether the user participates in the thread
+     */
+    public boolean isThreadSubscriber(UUID threadId, UUID userId) {
+        return subscriberIndex.subscribers(threadId).contains(userId);
+    }
+    
+    /**
+     * Records that a user joined a thread, so they receive its events without reconnecting.
+     * @param threadId The thread ID
+     * @param userId The new participant
+     */
+    public void addThreadParticipant(UUID threadId, UUID userId) {
+        publish(BusMessage.membership(BusMessage.Kind.PARTICIPANT_ADDED, nodeId, threadId, userId));
+    }
+    
+    /**
+     * Records that a user left a thread.
+     * @param threadId The thread ID
+     * @param userId The former participant
+     */
+    public void removeThreadParticipant(UUID threadId, UUID userId) {
+        publish(BusMessage.membership(BusMessage.Kind.PARTICIPANT_REMOVED, nodeId, threadId, userId));
     }
     
     /**
-     * Closes a connection for a specific user.
+     * Reloads a subscribed user's threads from the database, for membership changes that do
+     * not map to a single thread. Deferred until commit when called inside a transaction.
+     * @param userId The user whose memberships changed
+     */
+    public void refreshSubscriptions(UUID userId) {
+        publish(BusMessage.membership(BusMessage.Kind.SUBSCRIPTIONS_CHANGED, nodeId, null, userId));
+    }
+    
+    /**
+     * Broadcasts an event to all connected users.
+     * @param eventName The name of the event
+     * @param data The data to send
+     */
+    public void broadcastEvent(String eventName, Object data) {
+        publish(BusMessage.event(BusMessage.Kind.BROADCAST, nodeId, null, eventName, objectMapper.writeValueAsBytes(data)));
+    }
+    
+    /**
+     * Closes every session of a specific user.
      * @param userId The user ID
      */
     public void closeConnection(UUID userId) {
-        SseEmitter emitter = activeConnections.remove(userId);
-        if (emitter != null) {
-            try {
-                emitter.complete();
-            } catch (Exception e) {
-                // Ignore
-            }
+        List<RealtimeSession> sessions = activeConnections.remove(userId);
+        if (sessions != null) {
+            sessions.forEach(RealtimeSession::close);
         }
     }
     
     /**
      * Gets the number of active connections.
-     * @return Number of active SSE connections
+     * @return Number of open SSE and WebSocket sessions across all users
      */
     public int getActiveConnectionCount() {
+        return activeConnections.values().stream().mapToInt(List::size).sum();
+    }
+    
+    /**
+     * Gets the number of users with at least one open session.
+     * @return Number of connected users
+     */
+    public int getConnectedUserCount() {
         return activeConnections.size();
     }
+    
+    /**
+     * Gets the number of threads with at least one subscriber.
+     * @return Threads in the subscriber index
+     */
+    public int getSubscribedThreadCount() {
+        return subscriberIndex.threadCount();
+    }
+    
+    /**
+     * Gets the number of threads with a coalesced event waiting for its window to close.
+     * @return Pending coalesced events
+     */
+    public int getPendingCoalescedCount() {
+        return coalescers.values().stream().mapToInt(EventCoalescer::pendingCount).sum();
+    }
+    
+    /**
+     * Gets the number of events waiting in session queues.
+     * @return Events queued but not yet written, across all sessions
+     */
+    public int getQueuedEventCount() {
+        return activeConnections.values().stream()
+            .flatMap(List::stream)
+            .mapToInt(RealtimeSession::getQueuedCount)
+            .sum();
+    }
+    
+    /**
+     * Gets the number of sessions closed because their writes stopped completing.
+     * @return Sessions reaped since startup
+     */
+    public long getReapedSessionCount() {
+        return reapedSessions.get();
+    }
+    
+    /**
+     * Gets the number of keep-alives queued on quiet sessions.
+     * @return Heartbeats sent since startup
+     */
+    public long getHeartbeatCount() {
+        return heartbeatsSent.get();
+    }
+    
+    /**
+     * Gets the time events take from being encoded to being written to a session.
+     * @return Delivery latency timer, also exported as {@code realtime.delivery}
+     */
+    public Timer getDeliveryTimer() {
+        return deliveryTimer;
+    }
+    
+    /**
+     * Visits the next slot of the heartbeat wheel. A session that has written nothing for a
+     * heartbeat interval gets a keep-alive, unless it is still trying to write, in which case
+     * it is reaped once it has been stuck for the reap timeout.
+     */
+    private void heartbeatTick() {
+        long now = System.currentTimeMillis();
+        for (RealtimeSession session : heartbeatWheel.advance()) {
+            try {
+                long idle = now - session.getLastWriteMillis();
+                if (session.isClosed()) {
+                    heartbeatWheel.remove(session);
+                } else if (session.isBacklogged()) {
+                    if (idle >= reapAfterMillis) {
+                        log.debug("Reaping realtime session {} of user {}, no write completed in {} ms",
+                            session.getId(), session.getUserId(), idle);
+                        reapedSessions.incrementAndGet();
+                        session.closeWithError(new IOException("No write completed in " + idle + " ms"));
+                    }
+                } else {
+                    // Keeps the presence of users with a live session from lapsing
+                    presence.refresh(session.getUserId(), now);
+                    if (idle >= heartbeatIntervalMillis && session.enqueue(RealtimeEvent.heartbeat())) {
+                        heartbeatsSent.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                // Keep the timer alive; one bad session must not stop heartbeats for the rest
+                log.warn("Heartbeat check failed for realtime session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Clears typing indicators that were not renewed and announces users whose presence
+     * lapsed as offline, unless they are still connected here.
+     */
+    private void expireEphemeralState() {
+        long now = System.currentTimeMillis();
+        try {
+            typing.expire(now).keySet().forEach(key -> sendEphemeral(key.threadId(), "typing", typingPayload(key, false)));
+            presence.expire(now).forEach((userId, status) -> {
+                if (activeConnections.containsKey(userId)) {
+                    // Not refreshed, e.g. with heartbeats disabled, but still here
+                    presence.put(userId, status, now);
+                } else {
+                    announcePresence(userId, PresenceStatus.OFFLINE);
+                }
+            });
+            ephemeralLimiter.evictIdle(now);
+        } catch (Exception e) {
+            log.warn("Failed to expire typing and presence state: {}", e.getMessage());
+        }
+    }
+    
+    private void announcePresence(UUID userId, PresenceStatus status) {
+        if (status == PresenceStatus.OFFLINE) {
+            presence.remove(userId);
+        } else {
+            presence.put(userId, status, System.currentTimeMillis());
+        }
+        for (UUID threadId : subscriberIndex.threadsOf(userId)) {
+            sendEphemeral(threadId, "presence", Map.of(
+                "threadId", threadId.toString(),
+                "userId", userId.toString(),
+                "status", status.label()));
+        }
+    }
+    
+    private Map<String, Object> typingPayload(TypingKey key, boolean isTyping) {
+        return Map.of(
+            "threadId", key.threadId().toString(),
+            "userId", key.userId().toString(),
+            "typing", isTyping);
+    }
+    
+    private void sendEphemeral(UUID threadId, String eventName, Object data) {
+        publish(BusMessage.event(BusMessage.Kind.EPHEMERAL, nodeId, threadId, eventName, objectMapper.writeValueAsBytes(data)));
+    }
+    
+    /**
+     * Dispatches a message now, or when the current transaction commits.
+     */
+    private void publish(BusMessage message) {
+        outbox.add(message);
+    }
+    
+    private void dispatch(List<BusMessage> batch) {
+        for (BusMessage message : batch) {
+            try {
+                apply(message);
+            } catch (RuntimeException e) {
+                log.warn("Failed to deliver realtime {} message locally: {}", message.getKind(), e.getMessage());
+            }
+        }
+        // Publishing takes its own connection; keep it off the committing thread
+        try {
+            dispatcher.execute(() -> publishToBus(batch, 1));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; clients on other nodes resync when they reconnect
+            busFailures.incrementAndGet();
+        }
+    }
+    
+    private void publishToBus(List<BusMessage> batch, int attempt) {
+        try {
+            eventBus.publishAll(batch);
+        } catch (RuntimeException e) {
+            if (attempt >= BUS_PUBLISH_ATTEMPTS || scheduler.isShutdown()) {
+                // Local delivery already happened; clients on other nodes resync when they reconnect
+                busFailures.incrementAndGet();
+                log.error("Giving up publishing {} realtime messages to other nodes after {} attempts: {}",
+                    batch.size(), attempt, e.getMessage());
+                return;
+            }
+            busRetries.incrementAndGet();
+            long delay = BUS_RETRY_DELAY_MILLIS << (attempt - 1);
+            log.warn("Failed to publish {} realtime messages to other nodes, retrying in {} ms: {}",
+                batch.size(), delay, e.getMessage());
+            // Publishing does I/O, so the retry runs on the dispatcher rather than the shared timer
+            scheduler.schedule(() -> dispatcher.execute(() -> publishToBus(batch, attempt + 1)),
+                delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void onBusMessage(BusMessage message) {
+        if (message.getOrigin().equals(nodeId)) {
+            return;
+        }
+        if (message.getKind() == BusMessage.Kind.SUBSCRIPTIONS_CHANGED) {
+            // Reloading queries the database; keep it off the bus thread
+            dispatcher.execute(() -> apply(message));
+        } else {
+            apply(message);
+        }
+    }
+    
+    /**
+     * Applies a send or membership change to the sessions and index held by this node.
+     */
+    private void apply(BusMessage message) {
+        switch (message.getKind()) {
+            case USER -> {
+                if (replayBuffers.containsKey(message.getTarget())) {
+                    deliver(message.getTarget(), toEvent(message));
+                }
+            }
+            case THREAD -> {
+                Set<UUID> subscribers = subscriberIndex.subscribers(message.getTarget());
+                if (!subscribers.isEmpty()) {
+                    // Same bytes for each connected or resumable participant
+                    RealtimeEvent event = toEvent(message);
+                    subscribers.forEach(userId -> deliver(userId, event));
+                }
+            }
+            case EPHEMERAL -> {
+                // Not replayable, so it bypasses the replay buffers and goes to open sessions only
+                RealtimeEvent event = null;
+                for (UUID userId : subscriberIndex.subscribers(message.getTarget())) {
+                    for (RealtimeSession session : activeConnections.getOrDefault(userId, List.of())) {
+                        if (event == null) {
+                            event = RealtimeEvent.of(null, message.getEventName(), message.getData());
+                        }
+                        session.enqueue(event);
+                    }
+                }
+            }
+            case BROADCAST -> {
+                RealtimeEvent event = toEvent(message);
+                replayBuffers.keySet().forEach(userId -> deliver(userId, event));
+            }
+            case PARTICIPANT_ADDED -> subscriberIndex.addParticipant(message.getTarget(), message.getUserId());
+            case PARTICIPANT_REMOVED -> subscriberIndex.removeParticipant(message.getTarget(), message.getUserId());
+            case SUBSCRIPTIONS_CHANGED -> reloadSubscriptions(message.getUserId());
+        }
+    }
+    
+    private RealtimeEvent toEvent(BusMessage message) {
+        return RealtimeEvent.of(new EventId(epoch, eventSequence.incrementAndGet()), message.getEventName(), message.getData());
+    }
+    
+    /**
+     * Records the event for replay and queues it on each of the user's open sessions.
+     */
+    private void deliver(UUID userId, RealtimeEvent event) {
+        EventReplayBuffer buffer = replayBuffers.get(userId);
+        if (buffer == null) {
+            return;
+        }
+        synchronized (buffer) {
+            if (buffer.isRetired()) {
+                return;
+            }
+            buffer.append(event);
+            // Never blocks; a closed or overflowing session removes itself
+            for (RealtimeSession session : activeConnections.getOrDefault(userId, List.of())) {
+                session.enqueue(event);
+            }
+        }
+    }
+    
+    /**
+     * Drops replay buffers of users who have had no session for the retention period.
+     * Runs at most every quarter retention period, piggybacking on new connections.
+     */
+    private void sweepReplayBuffers(long now) {
+        long lastSweep = lastReplaySweep.get();
+        if (now - lastSweep < replayRetentionMillis / 4 || !lastReplaySweep.compareAndSet(lastSweep, now)) {
+            return;
+        }
+        replayBuffers.forEach((userId, buffer) -> {
+            synchronized (buffer) {
+                long idleSince = buffer.getIdleSince();
+                if (idleSince > 0 && now - idleSince > replayRetentionMillis && !activeConnections.containsKey(userId)) {
+                    buffer.retire();
+                    replayBuffers.remove(userId, buffer);
+                    subscriberIndex.unsubscribe(userId);
+                }
+            }
+        });
+    }
+    
+    private void reloadSubscriptions(UUID userId) {
+        if (!subscriberIndex.isSubscribed(userId)) {
+            return;
+        }
+        List<UUID> threadIds = threadParticipantRepository.findThreadIdsByUserId(userId);
+        EventReplayBuffer buffer = replayBuffers.get(userId);
+        if (buffer == null) {
+            return;
+        }
+        synchronized (buffer) {
+            // Skip if the user was swept while we were loading
+            if (!buffer.isRetired() && subscriberIndex.isSubscribed(userId)) {
+                subscriberIndex.subscribe(userId, threadIds);
+            }
+        }
+    }
+    
+    private void removeSession(RealtimeSession session) {
+        heartbeatWheel.remove(session);
+        activeConnections.computeIfPresent(session.getUserId(), (id, sessions) -> {
+            List<RealtimeSession> remaining = sessions.stream()
+                .filter(other -> other != session)
+                .collect(Collectors.toList());
+            return remaining.isEmpty() ? null : List.copyOf(remaining);
+        });
+        if (!activeConnections.containsKey(session.getUserId())) {
+            EventReplayBuffer buffer = replayBuffers.get(session.getUserId());
+            if (buffer != null) {
+                // Keep buffering for the retention period so the client can resume
+                buffer.setIdleSince(System.currentTimeMillis());
+            }
+            if (presence.remove(session.getUserId()) != null) {
+                announcePresence(session.getUserId(), PresenceStatus.OFFLINE);
+            }
+        }
+    }
 }
@@ -1,74 +1,342 @@
 package com.weave.service;
 
+import com.weave.dto.HighlightDTO;
+import com.weave.dto.SearchPageDTO;
 import com.weave.dto.SearchResultDTO;
 import com.weave.model.ExtractedEntity;
 import com.weave.model.Message;
+import com.weave.model.User;
+import com.weave.realtime.AfterCommitBatcher;
 import com.weave.repository.ExtractedEntityRepository;
 import com.weave.repository.MessageRepository;
+import com.weave.repository.ThreadParticipantRepository;
+import com.weave.search.ScoredDocument;
+import com.weave.search.SearchBackend;
+import com.weave.search.SearchCursor;
+import com.weave.search.SearchDocument;
+import com.weave.search.SearchResultCache;
+import com.weave.search.Snippet;
+import com.weave.search.Tokenizer;
+import com.weave.util.SecurityUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Full-text search over messages and extracted entities.
+ * Matching and ranking are delegated to the configured {@link SearchBackend}; only the
+ * top-ranked rows are loaded from the database. New rows are handed to the backend by
+ * {@link MessageService} and {@link EntityService} once the transaction that saved them
+ * commits, so a rolled-back write never becomes searchable.
+ * <p>
+ * Result pages are cached per query and thread scope; writes to a thread drop the
+ * cached pages that could include it. Cache counters are published as {@code cache.*}
+ * meters tagged {@code cache=search}.
+ */
 @Service
 public class SearchService {
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    private static final int STREAM_FIRST_PAGE_SIZE = 20;
+    private static final int STREAM_PAGE_SIZE = 200;
+    private static final int SNIPPET_LENGTH = 160;
+    private static final int MAX_REASON_WORDS = 3;
+
     private final ExtractedEntityRepository entityRepository;
     private final MessageRepository messageRepository;
+    private final ThreadParticipantRepository participantRepository;
+    private final SearchBackend backend;
+    private final SearchResultCache<SearchPageDTO> cache;
+    private final AfterCommitBatcher<Message> pendingMessages = new AfterCommitBatcher<>(this::addMessages);
+    private final AfterCommitBatcher<ExtractedEntity> pendingEntities = new AfterCommitBatcher<>(this::addEntities);
 
-    public SearchService(ExtractedEntityRepository entityRepository, MessageRepository messageRepository) {
+    public SearchService(
+            ExtractedEntityRepository entityRepository,
+            MessageRepository messageRepository,
+            ThreadParticipantRepository participantRepository,
+            SearchBackend backend,
+            MeterRegistry meterRegistry,
+            @Value("${weave.search.cache-size:1000}") int cacheSize) {
         this.entityRepository = entityRepository;
         this.messageRepository = messageRepository;
+        this.participantRepository = participantRepository;
+        this.backend = backend;
+        this.cache = new SearchResultCache<>(cacheSize);
+
+        FunctionCounter.builder("cache.gets", cache, SearchResultCache::hitCount)
+            .tag("cache", "search").tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, SearchResultCache::missCount)
+            .tag("cache", "search").tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", cache, SearchResultCache::evictionCount)
+            .tag("cache", "search").register(meterRegistry);
+        FunctionCounter.builder("cache.invalidations", cache, SearchResultCache::invalidationCount)
+            .tag("cache", "search").register(meterRegistry);
+        Gauge.builder("cache.size", cache, SearchResultCache::size)
+            .tag("cache", "search").register(meterRegistry);
+    }
+
+    /**
+     * Indexes a message once the current transaction commits, or now if there is none.
+     */
+    public void indexMessage(Message message) {
+        pendingMessages.add(message);
+    }
+
+    /**
+     * Indexes an entity once the current transaction commits, or now if there is none.
+     */
+    public void indexEntity(ExtractedEntity entity) {
+        pendingEntities.add(entity);
     }
-    
-    public List<SearchResultDTO> search(String query) {
-        String lowerQuery = query.toLowerCase();
-        List<SearchResultDTO> results = new ArrayList<>();
-        
-        // Search entities
-        List<ExtractedEntity> entities = entityRepository.findAll();
+
+    private void addMessages(List<Message> messages) {
+        for (Message message : messages) {
+            try {
+                backend.indexMessage(message);
+            } catch (RuntimeException e) {
+                // The row is committed; the next index rebuild picks it up
+                log.error("Failed to index message {}", message.getId(), e);
+            }
+            cache.invalidateThread(message.getThread().getId());
+        }
+    }
+
+    private void addEntities(List<ExtractedEntity> entities) {
         for (ExtractedEntity entity : entities) {
-            if (entity.getTitle().toLowerCase().contains(lowerQuery) ||
-                (entity.getDescription() != null && entity.getDescription().toLowerCase().contains(lowerQuery))) {
-                results.add(new SearchResultDTO(
-                    entity.getId(),
-                    "entity",
-                    entity.getTitle(),
-                    entity.getDescription() != null ? entity.getDescription() : entity.getTitle(),
-                    0.85,
-                    "Entity matches query: \"" + query + "\"",
-                    entity.getThread().getId(),
-                    null,
-                    entity.getId(),
-                    entity.getCreatedAt()
-                ));
+            try {
+                backend.indexEntity(entity);
+            } catch (RuntimeException e) {
+                log.error("Failed to index entity {}", entity.getId(), e);
             }
+            cache.invalidateThread(entity.getThread().getId());
         }
-        
-        // Search messages
-        List<Message> messages = messageRepository.findAll();
-        for (Message message : messages) {
-            if (message.getContent().toLowerCase().contains(lowerQuery)) {
-                results.add(new SearchResultDTO(
-                    message.getId(),
-                    "message",
-                    "Message",
-                    message.getContent(),
-                    0.75,
-                    "Message content contains: \"" + query + "\"",
-                    message.getThread().getId(),
-                    message.getId(),
-                    null,
-                    message.getTimestamp()
-                ));
+    }
+
+    /**
+     * Drops cached results that could include the thread. When called inside a transaction
+     * this is repeated after commit, since a page cached before the new rows became visible
+     * would be missing them.
+     */
+    public void invalidateThread(UUID threadId) {
+        cache.invalidateThread(threadId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidateThread(threadId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns one page of matches, best first.
+     * Only messages and entities from threads the current user participates in are considered.
+     * @param query Free-text query
+     * @param limit Maximum number of results to return
+     * @param cursor Continuation token from the previous page, or null for the first page
+     * @throws IllegalArgumentException If the cursor is malformed
+     */
+    public SearchPageDTO search(String query, int limit, String cursor) {
+        SearchCursor position = cursor != null
+            ? SearchCursor.decode(cursor)
+            : SearchCursor.first(System.currentTimeMillis());
+        List<UUID> threadScope = currentThreadScope();
+
+        SearchResultCache.Key key = SearchResultCache.key(query, threadScope, limit, cursor);
+        SearchPageDTO cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+
+        // Later pages keep the first page's statistics, so documents indexed meanwhile cannot shift the ranking
+        position = backend.pin(query, position);
+        List<ScoredDocument> hits = backend.search(query, threadScope, position, limit);
+        String nextCursor = hits.size() == limit
+            ? position.after(hits.get(hits.size() - 1)).encode()
+            : null;
+        SearchPageDTO page = new SearchPageDTO(hydrate(query, hits), nextCursor);
+        cache.put(key, page, stamp);
+        return page;
+    }
+
+    /**
+     * Emits up to {@code limit} matches, best first, one page at a time. The first page is
+     * small so the first results reach the client quickly however many documents match;
+     * later pages resume from a cursor, so memory stays bounded by the page size.
+     * @param threadScope Threads the caller may see, resolved on the request thread
+     * @param pageSink Receives each page of results as soon as it is hydrated
+     */
+    public void stream(String query, Collection<UUID> threadScope, int limit, Consumer<List<SearchResultDTO>> pageSink) {
+        SearchCursor position = backend.pin(query, SearchCursor.first(System.currentTimeMillis()));
+        int remaining = limit;
+        int pageSize = Math.min(STREAM_FIRST_PAGE_SIZE, remaining);
+        while (remaining > 0) {
+            List<ScoredDocument> hits = backend.search(query, threadScope, position, pageSize);
+            pageSink.accept(hydrate(query, hits));
+            if (hits.size() < pageSize) {
+                return;
             }
+            position = position.after(hits.get(hits.size() - 1));
+            remaining -= hits.size();
+            pageSize = Math.min(STREAM_PAGE_SIZE, remaining);
         }
-        
-        // Sort by confidence
-        results.sort((a, b) -> Double.compare(b.getConfidence(), a.getConfidence()));
-        
+    }
+
+    /**
+     * @return Ids of the threads the current user participates in
+     */
+    public List<UUID> currentThreadScope() {
+        User currentUser = SecurityUtils.getCurrentUser()
+            .orElseThrow(() -> new RuntimeException("User not authenticated"));
+        return participantRepository.findThreadIdsByUserId(currentUser.getId());
+    }
+
+    /**
+     * Loads the rows behind ranked hits, preserving rank order.
+     */
+    private List<SearchResultDTO> hydrate(String query, List<ScoredDocument> hits) {
+        List<UUID> entityIds = new ArrayList<>();
+        List<UUID> messageIds = new ArrayList<>();
+        for (ScoredDocument hit : hits) {
+            if (hit.getDocument().getType() == SearchDocument.Type.ENTITY) {
+                entityIds.add(hit.getDocument().getId());
+            } else {
+                messageIds.add(hit.getDocument().getId());
+            }
+        }
+
+        Map<UUID, ExtractedEntity> entities = new HashMap<>();
+        entityRepository.findAllById(entityIds).forEach(entity -> entities.put(entity.getId(), entity));
+        Map<UUID, Message> messages = new HashMap<>();
+        messageRepository.findAllById(messageIds).forEach(message -> messages.put(message.getId(), message));
+
+        List<String> terms = Tokenizer.tokenize(query);
+        // Pages are cached by the normalized query, so nothing in them may depend on the raw text
+        String normalized = String.join(" ", terms);
+
+        // Hits are already ranked; rows deleted since they were indexed are skipped
+        List<SearchResultDTO> results = new ArrayList<>(hits.size());
+        for (ScoredDocument hit : hits) {
+            double confidence = backend.toConfidence(hit.getScore());
+            UUID id = hit.getDocument().getId();
+            if (hit.getDocument().getType() == SearchDocument.Type.ENTITY) {
+                ExtractedEntity entity = entities.get(id);
+                if (entity != null) {
+                    String text = SearchBackend.entityText(entity);
+                    int[] offsets = matchOffsets(hit, text, terms);
+                    if (entity.getDescription() != null) {
+                        // The title is returned separately; highlight within the description only
+                        int descriptionStart = text.length() - entity.getDescription().length();
+                        text = entity.getDescription();
+                        offsets = shiftOffsets(offsets, descriptionStart);
+                    }
+                    Snippet snippet = Snippet.of(text, offsets, SNIPPET_LENGTH);
+                    results.add(new SearchResultDTO(
+                        entity.getId(),
+                        "entity",
+                        entity.getTitle(),
+                        snippet.getText(),
+                        confidence,
+                        describeMatches(snippet, "Entity matches query: \"" + normalized + "\""),
+                        entity.getThread().getId(),
+                        null,
+                        entity.getId(),
+                        entity.getCreatedAt(),
+                        toHighlights(snippet)
+                    ));
+                }
+            } else {
+                Message message = messages.get(id);
+                if (message != null) {
+                    Snippet snippet = Snippet.of(message.getContent(), matchOffsets(hit, message.getContent(), terms), SNIPPET_LENGTH);
+                    results.add(new SearchResultDTO(
+                        message.getId(),
+                        "message",
+                        "Message",
+                        snippet.getText(),
+                        confidence,
+                        describeMatches(snippet, "Message content contains: \"" + normalized + "\""),
+                        message.getThread().getId(),
+                        message.getId(),
+                        null,
+                        message.getTimestamp(),
+                        toHighlights(snippet)
+                    ));
+                }
+            }
+        }
+
         return results;
     }
-}
 
+    /**
+     * Offsets stored by the backend, or found by scanning the text when it stores none.
+     */
+    private static int[] matchOffsets(ScoredDocument hit, String text, List<String> terms) {
+        return hit.getMatchOffsets() != null
+            ? hit.getMatchOffsets()
+            : Snippet.findMatches(text, terms, true);
+    }
+
+    /**
+     * Rebases offsets onto a suffix of the text starting at {@code from}, dropping those before it.
+     */
+    private static int[] shiftOffsets(int[] offsets, int from) {
+        int[] shifted = new int[offsets.length];
+        int count = 0;
+        for (int i = 0; i < offsets.length; i += 2) {
+            if (offsets[i] >= from) {
+                shifted[count++] = offsets[i] - from;
+                shifted[count++] = offsets[i + 1] - from;
+            }
+        }
+        return Arrays.copyOf(shifted, count);
+    }
+
+    private static List<HighlightDTO> toHighlights(Snippet snippet) {
+        int[] ranges = snippet.getHighlights();
+        List<HighlightDTO> highlights = new ArrayList<>(ranges.length / 2);
+        for (int i = 0; i < ranges.length; i += 2) {
+            highlights.add(new HighlightDTO(ranges[i], ranges[i + 1]));
+        }
+        return highlights;
+    }
 
+    /**
+     * Names the distinct words that matched, e.g. {@code Matched "dinner", "dinners"}.
+     */
+    private static String describeMatches(Snippet snippet, String fallback) {
+        int[] ranges = snippet.getHighlights();
+        Set<String> words = new LinkedHashSet<>();
+        for (int i = 0; i < ranges.length && words.size() < MAX_REASON_WORDS; i += 2) {
+            words.add(snippet.getText().substring(ranges[i], ranges[i + 1]).toLowerCase(Locale.ROOT));
+        }
+        if (words.isEmpty()) {
+            return fallback;
+        }
+        return "Matched " + words.stream()
+            .map(word -> "\"" + word + "\"")
+            .collect(Collectors.joining(", "));
+    }
+}
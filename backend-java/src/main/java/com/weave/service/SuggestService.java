@@ -0,0 +1,144 @@
+package com.weave.service;
+
+import com.weave.dto.SuggestionDTO;
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Thread;
+import com.weave.model.User;
+import com.weave.realtime.AfterCommitBatcher;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.ThreadParticipantRepository;
+import com.weave.repository.ThreadRepository;
+import com.weave.repository.UserRepository;
+import com.weave.search.SuggestIndex;
+import com.weave.search.Suggestion;
+import com.weave.util.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Search-as-you-type over thread titles, entity titles and participant names.
+ * Labels are held in a {@link SuggestIndex} built at startup and kept current by
+ * {@link ThreadService}, {@link EntityService} and {@link UserService}, so keystrokes
+ * never reach the message tables.
+ */
+@Service
+public class SuggestService {
+    private static final Logger log = LoggerFactory.getLogger(SuggestService.class);
+
+    private static final int BOOTSTRAP_BATCH_SIZE = 1000;
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final ThreadRepository threadRepository;
+    private final ExtractedEntityRepository entityRepository;
+    private final UserRepository userRepository;
+    private final ThreadParticipantRepository participantRepository;
+    private final SuggestIndex index = new SuggestIndex();
+    private final AfterCommitBatcher<Suggestion> pending = new AfterCommitBatcher<>(this::putAll);
+
+    public SuggestService(ThreadRepository threadRepository, ExtractedEntityRepository entityRepository, UserRepository userRepository, ThreadParticipantRepository participantRepository) {
+        this.threadRepository = threadRepository;
+        this.entityRepository = entityRepository;
+        this.userRepository = userRepository;
+        this.participantRepository = participantRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        long started = System.currentTimeMillis();
+
+        Page<Thread> threads;
+        int page = 0;
+        do {
+            threads = threadRepository.findAll(PageRequest.of(page++, BOOTSTRAP_BATCH_SIZE, Sort.by("id")));
+            threads.forEach(this::addThread);
+        } while (threads.hasNext());
+
+        Page<User> users;
+        page = 0;
+        do {
+            users = userRepository.findAll(PageRequest.of(page++, BOOTSTRAP_BATCH_SIZE, Sort.by("id")));
+            users.forEach(this::addUser);
+        } while (users.hasNext());
+
+        Instant lastCreatedAt = Instant.EPOCH;
+        UUID lastId = MIN_UUID;
+        List<ExtractedEntity> entities;
+        do {
+            entities = entityRepository.findPageAfter(lastCreatedAt, lastId, PageRequest.of(0, BOOTSTRAP_BATCH_SIZE));
+            for (ExtractedEntity entity : entities) {
+                addEntity(entity);
+                lastCreatedAt = entity.getCreatedAt();
+                lastId = entity.getId();
+            }
+        } while (entities.size() == BOOTSTRAP_BATCH_SIZE);
+
+        log.info("Suggest index ready with {} labels in {} ms", index.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Adds or relabels a thread once the current transaction commits, or now if there is none.
+     */
+    public void addThread(Thread thread) {
+        pending.add(new Suggestion(thread.getId(), Suggestion.Type.THREAD, thread.getTitle(), thread.getId()));
+    }
+
+    /**
+     * Adds or relabels an entity once the current transaction commits, or now if there is none.
+     */
+    public void addEntity(ExtractedEntity entity) {
+        pending.add(new Suggestion(entity.getId(), Suggestion.Type.ENTITY, entity.getTitle(), entity.getThread().getId()));
+    }
+
+    /**
+     * Adds or renames a user once the current transaction commits, or now if there is none.
+     */
+    public void addUser(User user) {
+        pending.add(new Suggestion(user.getId(), Suggestion.Type.USER, user.getName(), null));
+    }
+
+    private void putAll(List<Suggestion> suggestions) {
+        // Labels of a rolled-back transaction never get here, so suggestions never point at missing rows
+        suggestions.forEach(index::put);
+    }
+
+    /**
+     * Returns the best completions for a partially typed query.
+     * Threads and entities are limited to threads the current user participates in;
+     * people are limited to participants of those threads.
+     * @param query Text typed so far
+     * @param fuzzy Also match labels within a typo or two of the last word
+     * @param limit Maximum number of suggestions to return
+     */
+    public List<SuggestionDTO> suggest(String query, boolean fuzzy, int limit) {
+        User currentUser = SecurityUtils.getCurrentUser()
+            .orElseThrow(() -> new RuntimeException("User not authenticated"));
+        Set<UUID> threadScope = new HashSet<>(participantRepository.findThreadIdsByUserId(currentUser.getId()));
+        Set<UUID> people = new HashSet<>(participantRepository.findCoParticipantIdsByUserId(currentUser.getId()));
+
+        return index.suggest(query, fuzzy, suggestion -> suggestion.getType() == Suggestion.Type.USER
+                ? people.contains(suggestion.getId())
+                : threadScope.contains(suggestion.getThreadId()), limit)
+            .stream()
+            .map(suggestion -> new SuggestionDTO(
+                suggestion.getId(),
+                suggestion.getType().name().toLowerCase(Locale.ROOT),
+                suggestion.getLabel(),
+                suggestion.getThreadId()
+            ))
+            .collect(Collectors.toList());
+    }
+}
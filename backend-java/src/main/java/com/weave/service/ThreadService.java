@@ -37,14 +37,18 @@ public class ThreadService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final UserRepository userRepository;
+    private final SuggestService suggestService;
+    private final RealtimeNotificationService notificationService;
 
-    public ThreadService(ThreadRepository threadRepository, ThreadParticipantRepository participantRepository, ExtractedEntityRepository entityRepository, GroupRepository groupRepository, GroupMemberRepository groupMemberRepository, UserRepository userRepository) {
+    public ThreadService(ThreadRepository threadRepository, ThreadParticipantRepository participantRepository, ExtractedEntityRepository entityRepository, GroupRepository groupRepository, GroupMemberRepository groupMemberRepository, UserRepository userRepository, SuggestService suggestService, RealtimeNotificationService notificationService) {
         this.threadRepository = threadRepository;
         this.participantRepository = participantRepository;
         this.entityRepository = entityRepository;
         this.groupRepository = groupRepository;
         this.groupMemberRepository = groupMemberRepository;
         this.userRepository = userRepository;
+        this.suggestService = suggestService;
+        this.notificationService = notificationService;
     }
     
     public List<ThreadDTO> getThreads(String sort) {
@@ -179,6 +183,10 @@ public class ThreadService {
                 threadParticipants.add(threadParticipant);
             }
             participantRepository.saveAll(threadParticipants);
+            suggestService.addThread(thread);
+            for (User participant : participants) {
+                notificationService.addThreadParticipant(thread.getId(), participant.getId());
+            }
             
             log.info("Created thread {} for user {}", thread.getId(), user.getId());
             
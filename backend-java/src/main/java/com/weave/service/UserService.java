@@ -15,9 +15,11 @@ import java.util.UUID;
 public class UserService {
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
     private final UserRepository userRepository;
+    private final SuggestService suggestService;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, SuggestService suggestService) {
         this.userRepository = userRepository;
+        this.suggestService = suggestService;
     }
     
     /**
@@ -71,7 +73,9 @@ public class UserService {
             }
             if (updated) {
                 log.debug("Updating user fields for firebaseUid={}", firebaseUid);
-                return userRepository.save(user);
+                User saved = userRepository.save(user);
+                suggestService.addUser(saved);
+                return saved;
             }
             return user;
         }
@@ -102,6 +106,7 @@ public class UserService {
         newUser.setVoiceEnabled(false);
         
         User savedUser = userRepository.save(newUser);
+        suggestService.addUser(savedUser);
         log.info("Successfully created user for firebaseUid={}, userId={}, email={}", 
             firebaseUid, savedUser.getId(), email);
         return savedUser;
@@ -114,7 +119,9 @@ public class UserService {
 
     @Transactional
     public User updateUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        suggestService.addUser(saved);
+        return saved;
     }
 }
 
@@ -0,0 +1,68 @@
+package com.weave.util;
+
+import com.weave.model.Message;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a thread's message history, handed to clients as an opaque token.
+ * <p>
+ * Messages are ordered by timestamp, then id, so a message's (timestamp, id) pair marks an
+ * exact point in the history even when several messages share a timestamp. Pages before
+ * or after a cursor are fetched with a keyset condition on that pair, which the
+ * (thread_id, timestamp, id) index serves without scanning the skipped messages.
+ */
+public final class MessageCursor {
+    private static final int ENCODED_SIZE = 28;
+
+    private final Instant timestamp;
+    private final UUID id;
+
+    private MessageCursor(Instant timestamp, UUID id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_SIZE);
+        buffer.putLong(timestamp.getEpochSecond());
+        buffer.putInt(timestamp.getNano());
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the token was not produced by {@link #encode()}
+     */
+    public static MessageCursor decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != ENCODED_SIZE) {
+            throw new IllegalArgumentException("Malformed message cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        if (nanos < 0 || nanos > 999_999_999) {
+            throw new IllegalArgumentException("Malformed message cursor");
+        }
+        Instant timestamp = Instant.ofEpochSecond(seconds, nanos);
+        UUID id = new UUID(buffer.getLong(), buffer.getLong());
+        return new MessageCursor(timestamp, id);
+    }
+}
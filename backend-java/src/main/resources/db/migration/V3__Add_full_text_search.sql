@@ -0,0 +1,32 @@
+-- Full-text search columns for the Postgres search backend (weave.search.backend=postgres).
+-- PostgreSQL only: tsvector columns kept in sync by triggers, backfilled by V7 and indexed by V8.
+-- The 'simple' configuration lowercases without stemming, matching the in-process index tokenizer.
+-- Plain nullable columns rather than STORED generated ones: adding those rewrites the whole table
+-- under an ACCESS EXCLUSIVE lock, while these only touch the catalog, so the lock is brief.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector;
+ALTER TABLE extracted_entities ADD COLUMN IF NOT EXISTS search_vector tsvector;
+
+CREATE OR REPLACE FUNCTION messages_search_vector() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector := to_tsvector('simple', coalesce(NEW.content, ''));
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION extracted_entities_search_vector() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector :=
+        setweight(to_tsvector('simple', coalesce(NEW.title, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(NEW.description, '')), 'B');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+-- Rows written from here on are covered; V7 fills in the existing ones
+CREATE TRIGGER messages_search_vector
+    BEFORE INSERT OR UPDATE OF content ON messages
+    FOR EACH ROW EXECUTE FUNCTION messages_search_vector();
+
+CREATE TRIGGER extracted_entities_search_vector
+    BEFORE INSERT OR UPDATE OF title, description ON extracted_entities
+    FOR EACH ROW EXECUTE FUNCTION extracted_entities_search_vector();
@@ -0,0 +1,7 @@
+-- Realtime events too large for a Postgres NOTIFY payload (weave.realtime.bus=postgres).
+-- The notification carries the row id; rows are deleted by the listeners after a few minutes.
+CREATE TABLE IF NOT EXISTS realtime_event_payloads (
+    id UUID PRIMARY KEY,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,5 @@
+-- Keyset pagination of a thread's history orders by (timestamp, id) within the thread.
+-- Built CONCURRENTLY so sends are not blocked on a large messages table, which cannot run
+-- inside a transaction (see the .sql.conf). If the build fails it leaves an INVALID index
+-- behind: drop it before rerunning, since IF NOT EXISTS would skip it.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_messages_thread_timestamp_id ON messages(thread_id, timestamp, id);
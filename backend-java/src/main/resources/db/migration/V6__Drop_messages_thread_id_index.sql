@@ -0,0 +1,4 @@
+-- Superseded by idx_messages_thread_timestamp_id from V5, which also serves plain thread_id lookups.
+-- Dropped in its own step, once the replacement is in place, and CONCURRENTLY so it does not
+-- lock the table (see the .sql.conf).
+DROP INDEX CONCURRENTLY IF EXISTS idx_messages_thread_id;
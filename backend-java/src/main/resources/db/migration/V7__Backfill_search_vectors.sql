@@ -0,0 +1,37 @@
+-- Fills in search_vector for rows that existed before V3, in batches of 5000 by primary key
+-- (walked with ORDER BY/LIMIT, as Postgres has no max() for uuid).
+-- Each batch commits on its own (so this cannot run inside a transaction, see the .sql.conf),
+-- which keeps row locks short and lets autovacuum keep up. The update leaves content, title
+-- and description alone, so V3's triggers do not fire again. Rerunning it after a failure
+-- recomputes the same values.
+DO $$
+DECLARE
+    last_id UUID;
+    batch_end UUID;
+BEGIN
+    LOOP
+        SELECT id INTO batch_end
+        FROM (SELECT id FROM messages WHERE last_id IS NULL OR id > last_id ORDER BY id LIMIT 5000) batch
+        ORDER BY id DESC LIMIT 1;
+        EXIT WHEN batch_end IS NULL;
+        UPDATE messages SET search_vector = to_tsvector('simple', coalesce(content, ''))
+        WHERE (last_id IS NULL OR id > last_id) AND id <= batch_end;
+        COMMIT;
+        last_id := batch_end;
+    END LOOP;
+
+    last_id := NULL;
+    LOOP
+        SELECT id INTO batch_end
+        FROM (SELECT id FROM extracted_entities WHERE last_id IS NULL OR id > last_id ORDER BY id LIMIT 5000) batch
+        ORDER BY id DESC LIMIT 1;
+        EXIT WHEN batch_end IS NULL;
+        UPDATE extracted_entities SET search_vector =
+            setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+            setweight(to_tsvector('simple', coalesce(description, '')), 'B')
+        WHERE (last_id IS NULL OR id > last_id) AND id <= batch_end;
+        COMMIT;
+        last_id := batch_end;
+    END LOOP;
+END
+$$;
@@ -0,0 +1,6 @@
+-- GIN indexes for the Postgres search backend, built after V7's backfill so each row is indexed once.
+-- Built CONCURRENTLY so writes are not blocked while they build, which cannot run inside a
+-- transaction (see the .sql.conf). If a build fails it leaves an INVALID index behind: drop it
+-- before rerunning, since IF NOT EXISTS would skip it.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_messages_search_vector ON messages USING GIN (search_vector);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_entities_search_vector ON extracted_entities USING GIN (search_vector);
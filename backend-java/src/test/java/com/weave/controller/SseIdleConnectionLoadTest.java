@@ -0,0 +1,236 @@
+package com.weave.controller;
+
+import com.google.firebase.auth.FirebaseToken;
+import com.weave.security.FirebaseConfig;
+import com.weave.security.FirebaseTokenVerifier;
+import com.weave.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Holds many idle {@code /v1/stream/reactive} connections open against the whole application
+ * and reports what they cost: heap and threads per connection, and whether any was refused or
+ * dropped while idle. Skipped unless a connection count is given, since it needs a raised
+ * open-file limit (two descriptors per connection, as the client runs in the same JVM):
+ * <pre>
+ * ulimit -n 120000
+ * mvn test -Dtest=SseIdleConnectionLoadTest -Dweave.load.connections=50000 [-Dweave.load.hold-seconds=60]
+ * </pre>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.datasource.url=jdbc:h2:mem:load;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS JSON",
+    "weave.realtime.bus=memory",
+    "weave.realtime.max-sessions-per-user=" + SseIdleConnectionLoadTest.SESSIONS_PER_USER,
+    "logging.level.com.weave=INFO",
+    "logging.level.org.hibernate.SQL=INFO",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+@EnabledIfSystemProperty(named = "weave.load.connections", matches = "[1-9][0-9]*")
+class SseIdleConnectionLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(SseIdleConnectionLoadTest.class);
+    static final int SESSIONS_PER_USER = 500;
+    // Connections opened before waiting for their responses, so the accept backlog never overflows
+    private static final int BATCH = 1000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserService userService;
+
+    @MockitoBean
+    private FirebaseConfig firebaseConfig;
+
+    @MockitoBean
+    private FirebaseTokenVerifier tokenVerifier;
+
+    @DynamicPropertySource
+    static void indexDirectory(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("weave.search.index-dir", Files.createTempDirectory("load-index")::toString);
+    }
+
+    @Test
+    void idleReactiveStreamsStayOpen() throws Exception {
+        int connections = Integer.getInteger("weave.load.connections");
+        long holdSeconds = Long.getLong("weave.load.hold-seconds", 60);
+
+        // Bearer tokens are Firebase UIDs; users exist up front so concurrent requests do not race to create them
+        int users = (connections + SESSIONS_PER_USER - 1) / SESSIONS_PER_USER;
+        for (int user = 0; user < users; user++) {
+            userService.getOrCreateUser("load-" + user, null, null, null);
+        }
+        when(tokenVerifier.verify(anyString())).thenAnswer(invocation -> {
+            FirebaseToken token = mock(FirebaseToken.class);
+            when(token.getUid()).thenReturn(invocation.getArgument(0));
+            return token;
+        });
+
+        long heapBefore = usedHeapAfterGc();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long start = System.nanoTime();
+
+        try (Selector selector = Selector.open()) {
+            List<Stream> streams = new ArrayList<>(connections);
+            for (int from = 0; from < connections; from += BATCH) {
+                int to = Math.min(connections, from + BATCH);
+                for (int i = from; i < to; i++) {
+                    Stream stream = new Stream("load-" + (i / SESSIONS_PER_USER));
+                    stream.channel.register(selector, SelectionKey.OP_CONNECT, stream);
+                    streams.add(stream);
+                }
+                while (countConnected(streams) + countClosed(streams) < to) {
+                    poll(selector, 1000);
+                }
+            }
+            long establishMillis = (System.nanoTime() - start) / 1_000_000;
+            int connected = countConnected(streams);
+
+            long heapOpen = usedHeapAfterGc();
+            int threadsOpen = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            long holdUntil = System.nanoTime() + holdSeconds * 1_000_000_000L;
+            while (System.nanoTime() < holdUntil) {
+                poll(selector, 1000);
+            }
+            int dropped = connected - countConnected(streams);
+            long heartbeats = streams.stream().mapToLong(stream -> stream.heartbeats).sum();
+
+            log.info("Idle SSE load: {} of {} connected in {} ms, {} dropped while idle for {} s, {} heartbeats; "
+                    + "heap {} MB -> {} MB ({} KB per connection, client included); threads {} -> {}",
+                connected, connections, establishMillis, dropped, holdSeconds, heartbeats,
+                heapBefore >> 20, heapOpen >> 20, (heapOpen - heapBefore) / 1024 / Math.max(1, connected),
+                threadsBefore, threadsOpen);
+
+            streams.stream().map(stream -> stream.failure).filter(Objects::nonNull).distinct().limit(5)
+                .forEach(failure -> log.warn("Idle SSE load: connection failed: {}", failure));
+            for (Stream stream : streams) {
+                stream.channel.close();
+            }
+            assertEquals(connections, connected, "connections refused or failed");
+            assertEquals(0, dropped, "connections dropped while idle");
+        }
+    }
+
+    private static void poll(Selector selector, long timeoutMillis) throws IOException {
+        selector.select(key -> ((Stream) key.attachment()).handle(key), timeoutMillis);
+    }
+
+    private static int countConnected(List<Stream> streams) {
+        return (int) streams.stream().filter(stream -> stream.connected && !stream.closed).count();
+    }
+
+    private static int countClosed(List<Stream> streams) {
+        return (int) streams.stream().filter(stream -> stream.closed).count();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            java.lang.Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * One client connection: sends the request, then reads until the {@code connected} event
+     * and counts heartbeats after it.
+     */
+    private final class Stream {
+        private final SocketChannel channel;
+        private final ByteBuffer request;
+        private final ByteBuffer buffer = ByteBuffer.allocate(512);
+        private final StringBuilder head = new StringBuilder();
+        private boolean connected;
+        private boolean closed;
+        private String failure;
+        private long heartbeats;
+
+        Stream(String token) throws IOException {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress("localhost", port));
+            request = StandardCharsets.US_ASCII.encode("GET /v1/stream/reactive HTTP/1.1\r\n"
+                + "Host: localhost:" + port + "\r\n"
+                + "Authorization: Bearer " + token + "\r\n"
+                + "Accept: text/event-stream\r\n\r\n");
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable() && channel.finishConnect()) {
+                    channel.write(request);
+                    key.interestOps(SelectionKey.OP_READ);
+                } else if (key.isReadable()) {
+                    read();
+                }
+            } catch (IOException e) {
+                fail(e.toString());
+            }
+            if (closed) {
+                key.cancel();
+            }
+        }
+
+        private void read() throws IOException {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                fail(connected ? "closed by the server" : "closed before connected: " + head);
+                return;
+            }
+            buffer.flip();
+            String text = StandardCharsets.UTF_8.decode(buffer).toString();
+            if (connected) {
+                // Heartbeats are empty SSE comments
+                heartbeats += text.chars().filter(c -> c == ':').count();
+                return;
+            }
+            head.append(text);
+            if (!head.toString().startsWith("HTTP/1.1 200")) {
+                if (head.length() >= 12) {
+                    fail(head.toString().lines().findFirst().orElse(""));
+                }
+            } else if (head.indexOf("event:connected") >= 0) {
+                connected = true;
+                head.setLength(0);
+            }
+        }
+
+        private void fail(String reason) {
+            closed = true;
+            failure = reason;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already failed
+            }
+        }
+    }
+}
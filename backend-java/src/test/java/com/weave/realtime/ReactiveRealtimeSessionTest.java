@@ -0,0 +1,99 @@
+package com.weave.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReactiveRealtimeSessionTest {
+    private final ExecutorService dispatcher = Executors.newVirtualThreadPerTaskExecutor();
+    private final LinkedBlockingQueue<ServerSentEvent<String>> received = new LinkedBlockingQueue<>();
+    private final ReactiveRealtimeSession session = new ReactiveRealtimeSession(UUID.randomUUID(), 16,
+        RealtimeSession.OverflowPolicy.DISCONNECT, dispatcher, closed -> { });
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+        dispatcher.shutdownNow();
+    }
+
+    @Test
+    void demandAddingUpPastIntegerMaxValueKeepsDelivering() throws InterruptedException {
+        // 4096 requests of 2^20 total 2^32, twice what a semaphore can count
+        Subscriber subscriber = subscribe(0);
+        for (int i = 0; i < 4096; i++) {
+            subscriber.more(1 << 20);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(enqueue("event-" + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            ServerSentEvent<String> event = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "event " + i + " was not delivered");
+            assertEquals("event-" + i, event.data());
+        }
+        assertFalse(session.isClosed());
+    }
+
+    @Test
+    void writesWaitForDemand() throws InterruptedException {
+        Subscriber subscriber = subscribe(2);
+        for (int i = 0; i < 3; i++) {
+            enqueue("event-" + i);
+        }
+        assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(1500, TimeUnit.MILLISECONDS), "delivered beyond the requested demand");
+
+        subscriber.more(1);
+        assertEquals("event-2", received.poll(5, TimeUnit.SECONDS).data());
+    }
+
+    private Subscriber subscribe(long initialDemand) {
+        Subscriber subscriber = new Subscriber(initialDemand);
+        session.getEvents().subscribe(subscriber);
+        return subscriber;
+    }
+
+    private boolean enqueue(String data) {
+        return session.enqueue(RealtimeEvent.of(null, "test", data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private final class Subscriber extends BaseSubscriber<ServerSentEvent<String>> {
+        private final long initialDemand;
+
+        Subscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (initialDemand > 0) {
+                request(initialDemand);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(ServerSentEvent<String> event) {
+            received.add(event);
+        }
+
+        void more(long n) {
+            request(n);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.weave.search;
+
+import com.weave.model.Message;
+import com.weave.model.Thread;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Paging through a query while other documents are indexed must return every match
+ * that existed when the first page was served exactly once.
+ */
+class IndexSearchBackendPaginationTest {
+    private static final int MATCHES = 200;
+    private static final int PAGE_SIZE = 15;
+    private static final long NOW = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+
+    @TempDir
+    Path directory;
+
+    private IndexSearchBackend backend;
+    private final Thread thread = thread();
+    private final Thread otherThread = thread();
+    private int written;
+
+    @BeforeEach
+    void setUp() {
+        // A low flush threshold so the query spans the buffer and several mapped segments
+        backend = new IndexSearchBackend(mock(ExtractedEntityRepository.class), mock(MessageRepository.class),
+            directory.toString(), 64, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.closeIndex();
+    }
+
+    @Test
+    void everyMatchIsReturnedOnceWhileDocumentsAreIndexedBetweenPages() {
+        Set<UUID> expected = new HashSet<>();
+        for (int i = 0; i < MATCHES; i++) {
+            // Varying lengths and repeats spread the scores; equal ones fall back to timestamp and id
+            expected.add(index(thread, "dinner plans " + "word ".repeat(i % 7) + "dinner ".repeat(i % 3)));
+        }
+
+        List<UUID> seen = new ArrayList<>();
+        SearchCursor cursor = backend.pin("dinner pl", SearchCursor.first(NOW));
+        while (true) {
+            List<ScoredDocument> hits = backend.search("dinner pl", List.of(thread.getId()), cursor, PAGE_SIZE);
+            hits.forEach(hit -> seen.add(hit.getDocument().getId()));
+            if (hits.size() < PAGE_SIZE) {
+                break;
+            }
+            // Unrelated documents move the document count and average length; the others move the
+            // query terms' document frequencies and add prefix expansions
+            for (int i = 0; i < 25; i++) {
+                index(otherThread, "lunch budget review " + "filler ".repeat(i));
+                index(otherThread, "dinner dinner planning");
+                index(otherThread, "plates and plants");
+            }
+            cursor = SearchCursor.decode(cursor.after(hits.get(hits.size() - 1)).encode());
+        }
+
+        assertEquals(seen.size(), new HashSet<>(seen).size(), "a match was returned twice");
+        assertEquals(expected, new HashSet<>(seen));
+    }
+
+    @Test
+    void newMatchesInScopeAreNeverReturnedTwice() {
+        for (int i = 0; i < MATCHES; i++) {
+            index(thread, "dinner " + "word ".repeat(i % 5));
+        }
+
+        List<UUID> seen = new ArrayList<>();
+        SearchCursor cursor = backend.pin("dinner", SearchCursor.first(NOW));
+        for (int page = 0; page < 100; page++) {
+            List<ScoredDocument> hits = backend.search("dinner", List.of(thread.getId()), cursor, PAGE_SIZE);
+            hits.forEach(hit -> seen.add(hit.getDocument().getId()));
+            if (hits.size() < PAGE_SIZE) {
+                break;
+            }
+            index(thread, "dinner dinner");
+            index(thread, "dinner " + "word ".repeat(40));
+            cursor = SearchCursor.decode(cursor.after(hits.get(hits.size() - 1)).encode());
+        }
+
+        assertEquals(seen.size(), new HashSet<>(seen).size(), "a match was returned twice");
+        assertTrue(seen.size() >= MATCHES);
+    }
+
+    @Test
+    void cursorOfAnotherQueryIsRejected() {
+        for (int i = 0; i < 20; i++) {
+            index(thread, "dinner plans " + i);
+        }
+        SearchCursor cursor = backend.pin("dinner", SearchCursor.first(NOW));
+        List<ScoredDocument> hits = backend.search("dinner", List.of(thread.getId()), cursor, 5);
+        SearchCursor next = SearchCursor.decode(cursor.after(hits.get(hits.size() - 1)).encode());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> backend.search("plans", List.of(thread.getId()), next, 5));
+    }
+
+    private UUID index(Thread target, String content) {
+        UUID id = UUID.randomUUID();
+        // Distinct, increasing timestamps within the last day
+        Instant timestamp = Instant.ofEpochMilli(NOW - 86_400_000L + written++ * 1000L);
+        backend.indexMessage(new Message(id, target, null, Message.MessageType.TEXT, content, null, null,
+            timestamp, null, null));
+        return id;
+    }
+
+    private static Thread thread() {
+        return new Thread(UUID.randomUUID(), null, null, null, 0, 0.0, null, 0, null, null, null);
+    }
+}
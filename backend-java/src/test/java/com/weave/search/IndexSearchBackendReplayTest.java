@@ -0,0 +1,97 @@
+package com.weave.search;
+
+import com.weave.model.Message;
+import com.weave.model.Thread;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.MessageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link IndexSearchBackend#buildIndex()} must replay from where the previous replay began if
+ * that replay was interrupted, even though segments newer than that were persisted meanwhile.
+ */
+class IndexSearchBackendReplayTest {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration OVERLAP = Duration.ofMinutes(5);
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    @TempDir
+    Path directory;
+
+    private final Thread thread = new Thread(UUID.randomUUID(), null, null, null, 0, 0.0, null, 0, null, null, null);
+
+    @Test
+    void interruptedReplayIsRepeatedFromItsStart() {
+        // First start: every row is replayed and persisted
+        List<Message> initial = messages(0, 10);
+        MessageRepository messages = mock(MessageRepository.class);
+        ExtractedEntityRepository entities = mock(ExtractedEntityRepository.class);
+        when(messages.findPageAfter(any(), any(), any())).thenReturn(initial);
+        IndexSearchBackend first = backend(messages, entities);
+        first.buildIndex();
+        verify(messages).findPageAfter(eq(Instant.EPOCH), eq(MIN_UUID), any(Pageable.class));
+        first.closeIndex();
+        Instant persisted = initial.get(initial.size() - 1).getTimestamp();
+
+        // Second start: newer messages are replayed and flushed, then the entity pass fails
+        messages = mock(MessageRepository.class);
+        entities = mock(ExtractedEntityRepository.class);
+        when(messages.findPageAfter(any(), any(), any())).thenReturn(messages(10, 15));
+        when(entities.findPageAfter(any(), any(), any())).thenThrow(new IllegalStateException("database went away"));
+        IndexSearchBackend interrupted = backend(messages, entities);
+        assertThrows(IllegalStateException.class, interrupted::buildIndex);
+        verify(messages).findPageAfter(eq(persisted.minus(OVERLAP)), eq(MIN_UUID), any(Pageable.class));
+        interrupted.closeIndex();
+
+        // Third start: the replay begins where the interrupted one did, not after the newer messages
+        messages = mock(MessageRepository.class);
+        entities = mock(ExtractedEntityRepository.class);
+        List<Message> replayed = messages(10, 15);
+        when(messages.findPageAfter(any(), any(), any())).thenReturn(replayed);
+        IndexSearchBackend resumed = backend(messages, entities);
+        resumed.buildIndex();
+        verify(messages).findPageAfter(eq(persisted.minus(OVERLAP)), eq(MIN_UUID), any(Pageable.class));
+        verify(entities).findPageAfter(eq(persisted.minus(OVERLAP)), eq(MIN_UUID), any(Pageable.class));
+        resumed.closeIndex();
+
+        // Fourth start: the completed replay cleared the marker
+        messages = mock(MessageRepository.class);
+        entities = mock(ExtractedEntityRepository.class);
+        IndexSearchBackend restarted = backend(messages, entities);
+        restarted.buildIndex();
+        Instant latest = replayed.get(replayed.size() - 1).getTimestamp();
+        verify(messages).findPageAfter(eq(latest.minus(OVERLAP)), eq(MIN_UUID), any(Pageable.class));
+        assertEquals(15, restarted.search("dinner", null, SearchCursor.first(START.toEpochMilli()), 100).size());
+        restarted.closeIndex();
+    }
+
+    private IndexSearchBackend backend(MessageRepository messages, ExtractedEntityRepository entities) {
+        return new IndexSearchBackend(entities, messages, directory.toString(), 4, 1);
+    }
+
+    private List<Message> messages(int from, int to) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            messages.add(new Message(new UUID(1, i), thread, null, Message.MessageType.TEXT, "dinner " + i, null, null,
+                START.minus(Duration.ofHours(100 - i)), null, null));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,149 @@
+package com.weave.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A buffer written by {@link SegmentWriter} and mapped back must answer every query exactly
+ * as the buffer did.
+ */
+class MappedSegmentTest {
+    private static final long NOW = 1_767_225_600_000L;
+    private static final UUID THREAD = new UUID(0, 1);
+    private static final UUID OTHER_THREAD = new UUID(0, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsEverythingTheBufferHeld() throws IOException {
+        InvertedIndex buffer = new InvertedIndex();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            UUID id = new UUID(1, i);
+            ids.add(id);
+            buffer.add(new SearchDocument(id, i % 5 == 0 ? SearchDocument.Type.ENTITY : SearchDocument.Type.MESSAGE,
+                i % 2 == 0 ? THREAD : OTHER_THREAD, NOW - i * 60_000L), "dinner plans " + "Café rendez-vous ".repeat(i % 3) + "item" + i);
+        }
+        // A replaced document is tombstoned in the buffer and must not reach the file
+        buffer.add(new SearchDocument(ids.get(3), SearchDocument.Type.MESSAGE, OTHER_THREAD, NOW), "lunch instead");
+
+        Path file = directory.resolve("round-trip.seg");
+        buffer.writeTo(file);
+        MappedSegment mapped = MappedSegment.open(file);
+
+        assertEquals(buffer.docCount(), mapped.docCount());
+        assertEquals(buffer.totalLength(), mapped.totalLength());
+        assertEquals(buffer.maxTimestamp(), mapped.maxTimestamp());
+        for (UUID id : ids) {
+            assertTrue(mapped.contains(id));
+        }
+        assertFalse(mapped.contains(new UUID(2, 0)));
+        for (String term : List.of("dinner", "plans", "café", "rendez", "lunch", "item7", "missing")) {
+            assertEquals(buffer.docFreq(term), mapped.docFreq(term), term);
+        }
+        assertEquals(prefixTerms(buffer, "item1"), prefixTerms(mapped, "item1"));
+        assertEquals(prefixTerms(buffer, "caf"), prefixTerms(mapped, "caf"));
+
+        assertSameHits(buffer, mapped, List.of("dinner"), List.of(), null);
+        assertSameHits(buffer, mapped, List.of("dinner"), List.of("item1", "item10", "item11"), List.of(THREAD));
+        assertSameHits(buffer, mapped, List.of("lunch"), List.of(), null);
+
+        for (UUID id : List.of(ids.get(0), ids.get(3), ids.get(8))) {
+            int[] expected = buffer.matchOffsets(id, List.of("dinner", "café", "lunch"));
+            assertNotNull(expected);
+            assertArrayEquals(expected, mapped.matchOffsets(id, List.of("dinner", "café", "lunch")));
+        }
+    }
+
+    @Test
+    void rejectsAnotherFormatVersion() throws IOException {
+        Path file = segmentWithOneDocument();
+        patchInt(file, 4, SegmentWriter.VERSION - 1);
+
+        MappedSegment.UnsupportedVersionException e =
+            assertThrows(MappedSegment.UnsupportedVersionException.class, () -> MappedSegment.open(file));
+        assertTrue(e.getMessage().contains("version " + (SegmentWriter.VERSION - 1)));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path file = segmentWithOneDocument();
+        patchInt(file, 0, 0);
+
+        IOException e = assertThrows(IOException.class, () -> MappedSegment.open(file));
+        assertFalse(e instanceof MappedSegment.UnsupportedVersionException);
+    }
+
+    private Path segmentWithOneDocument() throws IOException {
+        InvertedIndex buffer = new InvertedIndex();
+        buffer.add(new SearchDocument(UUID.randomUUID(), SearchDocument.Type.MESSAGE, THREAD, NOW), "dinner");
+        Path file = directory.resolve("single.seg");
+        buffer.writeTo(file);
+        return file;
+    }
+
+    private static void patchInt(Path file, long position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+
+    private static SortedSet<String> prefixTerms(Segment segment, String prefix) {
+        SortedSet<String> terms = new TreeSet<>();
+        segment.collectPrefixTerms(prefix, 100, terms);
+        return terms;
+    }
+
+    private static void assertSameHits(Segment expected, Segment actual, List<String> required, List<String> anyOf,
+                                       List<UUID> threadScope) {
+        double[] requiredIdf = new double[required.size()];
+        for (int i = 0; i < required.size(); i++) {
+            requiredIdf[i] = 1.0 + i;
+        }
+        double[] anyOfIdf = new double[anyOf.size()];
+        for (int i = 0; i < anyOf.size(); i++) {
+            anyOfIdf[i] = 0.5 + i;
+        }
+        double avgDocLength = (double) expected.totalLength() / expected.docCount();
+        SegmentQuery query = new SegmentQuery(required, requiredIdf, anyOf, anyOfIdf, avgDocLength);
+        Bm25Scorer scorer = new Bm25Scorer(NOW);
+
+        TopKCollector fromBuffer = new TopKCollector(100);
+        TopKCollector fromFile = new TopKCollector(100);
+        expected.search(query, threadScope, scorer, fromBuffer);
+        actual.search(query, threadScope, scorer, fromFile);
+
+        assertEquals(fromBuffer.getTotalHits(), fromFile.getTotalHits(), String.valueOf(required));
+        assertTrue(fromBuffer.getTotalHits() > 0, String.valueOf(required));
+        List<ScoredDocument> hits = fromBuffer.results();
+        List<ScoredDocument> mappedHits = fromFile.results();
+        for (int i = 0; i < hits.size(); i++) {
+            SearchDocument document = hits.get(i).getDocument();
+            SearchDocument mappedDocument = mappedHits.get(i).getDocument();
+            assertEquals(document.getId(), mappedDocument.getId());
+            assertEquals(document.getType(), mappedDocument.getType());
+            assertEquals(document.getThreadId(), mappedDocument.getThreadId());
+            assertEquals(document.getTimestamp(), mappedDocument.getTimestamp());
+            assertEquals(hits.get(i).getScore(), mappedHits.get(i).getScore());
+        }
+    }
+}
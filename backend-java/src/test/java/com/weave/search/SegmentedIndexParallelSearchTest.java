@@ -0,0 +1,106 @@
+package com.weave.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fanning a query out over the search pool must return exactly what searching the segments
+ * one after another does: the same hits, scores, order and totals, page after page.
+ */
+class SegmentedIndexParallelSearchTest {
+    private static final int MIN_PARALLEL_DOCS = 50_000;
+    private static final int FLUSH_THRESHOLD = 20_000;
+    private static final int VOCABULARY = 300;
+    private static final long NOW = 1_767_225_600_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void matchesSequentialSearchAtTheThreshold() throws IOException {
+        assertEquivalent(MIN_PARALLEL_DOCS);
+    }
+
+    @Test
+    void matchesSequentialSearchAboveTheThreshold() throws IOException {
+        assertEquivalent(MIN_PARALLEL_DOCS + 35_000);
+    }
+
+    private void assertEquivalent(int documents) throws IOException {
+        List<UUID> threads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            threads.add(new UUID(0, i));
+        }
+        try (SegmentedIndex parallel = SegmentedIndex.open(directory.resolve("parallel"), FLUSH_THRESHOLD, 4);
+             SegmentedIndex sequential = SegmentedIndex.open(directory.resolve("sequential"), FLUSH_THRESHOLD, 1)) {
+            Random random = new Random(42);
+            for (int i = 0; i < documents; i++) {
+                // Coarse timestamps so that equal scores also tie on time and fall back to id
+                SearchDocument document = new SearchDocument(new UUID(1, i),
+                    i % 10 == 0 ? SearchDocument.Type.ENTITY : SearchDocument.Type.MESSAGE,
+                    threads.get(random.nextInt(threads.size())), NOW - random.nextInt(1000) * 3_600_000L);
+                String text = text(random);
+                parallel.add(document, text);
+                sequential.add(document, text);
+            }
+            assertEquals(documents, parallel.size());
+            assertTrue(parallel.segmentCount() >= 2, "expected the query to span several segments");
+
+            for (String query : List.of("w7", "w3 w12", "w1 w2 w", "w29")) {
+                assertSamePages(parallel, sequential, query, null);
+                assertSamePages(parallel, sequential, query, threads.subList(0, 5));
+            }
+        }
+    }
+
+    private static void assertSamePages(SegmentedIndex parallel, SegmentedIndex sequential, String query,
+                                        List<UUID> threadScope) {
+        List<String> terms = Tokenizer.tokenize(query);
+        QueryStatistics statistics = parallel.statistics(terms, true);
+        assertEquals(statistics.getDocCount(), sequential.statistics(terms, true).getDocCount());
+
+        Bm25Scorer scorer = new Bm25Scorer(NOW);
+        SearchCursor cursor = SearchCursor.first(NOW);
+        for (int page = 0; page < 3; page++) {
+            TopKCollector fanned = new TopKCollector(50, page == 0 ? null : cursor);
+            TopKCollector serial = new TopKCollector(50, page == 0 ? null : cursor);
+            parallel.search(statistics, threadScope, scorer, fanned);
+            sequential.search(statistics, threadScope, scorer, serial);
+
+            assertEquals(serial.getTotalHits(), fanned.getTotalHits(), query + " page " + page);
+            List<ScoredDocument> expected = serial.results();
+            List<ScoredDocument> actual = fanned.results();
+            assertFalse(expected.isEmpty(), query + " page " + page);
+            assertEquals(expected.size(), actual.size(), query + " page " + page);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getDocument().getId(), actual.get(i).getDocument().getId());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore());
+            }
+            cursor = cursor.after(expected.get(expected.size() - 1));
+        }
+    }
+
+    /**
+     * Zipf-like word choice, so some terms are common and others rare.
+     */
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 3 + random.nextInt(12);
+        for (int i = 0; i < words; i++) {
+            int word = (int) Math.floor(Math.pow(VOCABULARY, random.nextDouble()));
+            text.append('w').append(word).append(' ');
+        }
+        return text.toString();
+    }
+}
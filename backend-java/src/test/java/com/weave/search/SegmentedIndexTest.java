@@ -0,0 +1,181 @@
+package com.weave.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flushing, merging and reopening must not change what a query returns, and the manifest's
+ * replay marker must survive a restart until the replay completes.
+ */
+class SegmentedIndexTest {
+    private static final long NOW = 1_767_225_600_000L;
+    private static final List<String> QUERIES = List.of("w3", "w1 w5", "w2 w", "w17");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergedSegmentsAnswerLikeOneBuffer() throws IOException {
+        try (SegmentedIndex merged = SegmentedIndex.open(directory.resolve("merged"), 100, 1);
+             SegmentedIndex buffered = SegmentedIndex.open(directory.resolve("buffered"), 1_000_000, 1)) {
+            addDocuments(merged, 0, 3000);
+            addDocuments(buffered, 0, 3000);
+            merged.flush();
+
+            // 30 flushes of 100 documents, merged four at a time whenever there are more than eight
+            assertTrue(merged.segmentCount() <= 8, "segments were not merged: " + merged.segmentCount());
+            assertEquals(merged.segmentCount(), segmentFiles(directory.resolve("merged")));
+            assertEquals(buffered.size(), merged.size());
+            for (String query : QUERIES) {
+                assertSameResults(buffered, merged, query);
+            }
+        }
+    }
+
+    @Test
+    void reopenedIndexAnswersAsBeforeTheRestart() throws IOException {
+        Path path = directory.resolve("index");
+        try (SegmentedIndex reference = SegmentedIndex.open(directory.resolve("reference"), 1_000_000, 1)) {
+            addDocuments(reference, 0, 1000);
+            try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+                addDocuments(index, 0, 1000);
+            }
+            // Closing persists the buffer too, so nothing has to be replayed
+            try (SegmentedIndex reopened = SegmentedIndex.open(path, 300, 1)) {
+                assertEquals(1000, reopened.size());
+                assertEquals(timestamp(999), reopened.highWaterTimestamp());
+                for (String query : QUERIES) {
+                    assertSameResults(reference, reopened, query);
+                }
+            }
+        }
+    }
+
+    @Test
+    void segmentsOfAnotherFormatVersionAreDiscardedOnOpen() throws IOException {
+        Path path = directory.resolve("index");
+        try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+            addDocuments(index, 0, 1000);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(path)) {
+            segment = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, SegmentWriter.VERSION + 1), 4);
+        }
+
+        try (SegmentedIndex reopened = SegmentedIndex.open(path, 300, 1)) {
+            assertEquals(0, reopened.size());
+            // A high-water mark of 0 makes the backend replay every row into the current format
+            assertEquals(0, reopened.highWaterTimestamp());
+            assertEquals(0, segmentFiles(path));
+        }
+    }
+
+    @Test
+    void replayMarkerSurvivesARestartUntilTheReplayCompletes() throws IOException {
+        Path path = directory.resolve("index");
+        long persisted;
+        try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+            addDocuments(index, 0, 600);
+            index.flush();
+            persisted = index.highWaterTimestamp();
+        }
+
+        // A replay flushes newer documents than some not yet replayed; a restart must start over from its beginning
+        try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+            index.beginReplay(persisted);
+            addDocuments(index, 600, 900);
+            index.flush();
+            assertEquals(persisted, index.highWaterTimestamp());
+        }
+        assertTrue(Files.readString(path.resolve("segments.manifest"), StandardCharsets.UTF_8)
+            .contains("replay-from " + persisted));
+
+        try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+            assertEquals(persisted, index.highWaterTimestamp());
+            assertEquals(900, index.size());
+            index.beginReplay(index.highWaterTimestamp());
+            addDocuments(index, 900, 1000);
+            index.completeReplay();
+            assertEquals(timestamp(999), index.highWaterTimestamp());
+        }
+        assertFalse(Files.readString(path.resolve("segments.manifest"), StandardCharsets.UTF_8).contains("replay-from"));
+
+        try (SegmentedIndex index = SegmentedIndex.open(path, 300, 1)) {
+            assertEquals(1000, index.size());
+            assertEquals(timestamp(999), index.highWaterTimestamp());
+        }
+    }
+
+    /**
+     * Adds documents {@code from} until {@code to}; the same range always yields the same documents,
+     * with timestamps increasing towards {@link #NOW}.
+     */
+    private static void addDocuments(SegmentedIndex index, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Random random = new Random(i);
+            StringBuilder text = new StringBuilder();
+            int words = 3 + random.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                text.append('w').append((int) Math.floor(Math.pow(40, random.nextDouble()))).append(' ');
+            }
+            index.add(new SearchDocument(new UUID(1, i), i % 7 == 0 ? SearchDocument.Type.ENTITY : SearchDocument.Type.MESSAGE,
+                new UUID(0, i % 4), timestamp(i)), text.toString());
+        }
+    }
+
+    private static long timestamp(int i) {
+        return NOW - (999 - i) * 60_000L;
+    }
+
+    private static long segmentFiles(Path path) throws IOException {
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static void assertSameResults(SegmentedIndex expected, SegmentedIndex actual, String query) {
+        List<String> terms = Tokenizer.tokenize(query);
+        QueryStatistics statistics = expected.statistics(terms, true);
+        QueryStatistics actualStatistics = actual.statistics(terms, true);
+        assertEquals(statistics.getDocCount(), actualStatistics.getDocCount(), query);
+        assertEquals(statistics.getTotalLength(), actualStatistics.getTotalLength(), query);
+        assertEquals(statistics.getAnyOf(), actualStatistics.getAnyOf(), query);
+
+        Bm25Scorer scorer = new Bm25Scorer(NOW);
+        TopKCollector fromExpected = new TopKCollector(100);
+        TopKCollector fromActual = new TopKCollector(100);
+        expected.search(statistics, null, scorer, fromExpected);
+        actual.search(actualStatistics, null, scorer, fromActual);
+        assertEquals(fromExpected.getTotalHits(), fromActual.getTotalHits(), query);
+        assertTrue(fromExpected.getTotalHits() > 0, query);
+
+        List<ScoredDocument> hits = expected.withMatchOffsets(fromExpected.results(), statistics.allTerms());
+        List<ScoredDocument> actualHits = actual.withMatchOffsets(fromActual.results(), actualStatistics.allTerms());
+        assertEquals(hits.size(), actualHits.size(), query);
+        for (int i = 0; i < hits.size(); i++) {
+            assertEquals(hits.get(i).getDocument().getId(), actualHits.get(i).getDocument().getId(), query);
+            assertEquals(hits.get(i).getScore(), actualHits.get(i).getScore(), query);
+            assertArrayEquals(hits.get(i).getMatchOffsets(), actualHits.get(i).getMatchOffsets(), query);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.weave.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Labels the caller cannot see must not use up the work bound of a short prefix.
+ */
+class SuggestIndexTest {
+    private static final UUID MY_THREAD = new UUID(0, 1);
+    private static final UUID OTHER_THREAD = new UUID(0, 2);
+
+    @Test
+    void prefixCrowdedWithHiddenLabelsStillCompletesVisibleOnes() {
+        SuggestIndex index = new SuggestIndex();
+        // Every hidden term sorts before the visible one, and there are more than the bound
+        for (int i = 0; i < 3000; i++) {
+            index.put(new Suggestion(new UUID(1, i), Suggestion.Type.THREAD, String.format("alpha%04d", i), OTHER_THREAD));
+        }
+        index.put(new Suggestion(new UUID(2, 0), Suggestion.Type.THREAD, "Azure", MY_THREAD));
+
+        List<Suggestion> suggestions = index.suggest("a", false, s -> MY_THREAD.equals(s.getThreadId()), 10);
+
+        assertEquals(List.of("Azure"), suggestions.stream().map(Suggestion::getLabel).toList());
+    }
+
+    @Test
+    void leadingWordsMustPrefixATermOfTheLabel() {
+        SuggestIndex index = new SuggestIndex();
+        index.put(new Suggestion(new UUID(2, 0), Suggestion.Type.THREAD, "Dinner plans", MY_THREAD));
+        index.put(new Suggestion(new UUID(2, 1), Suggestion.Type.THREAD, "Lunch plans", MY_THREAD));
+        index.put(new Suggestion(new UUID(2, 2), Suggestion.Type.THREAD, "Dinner plans", OTHER_THREAD));
+
+        List<Suggestion> suggestions = index.suggest("dinn pl", false, s -> MY_THREAD.equals(s.getThreadId()), 10);
+
+        assertEquals(List.of(new UUID(2, 0)), suggestions.stream().map(Suggestion::getId).toList());
+    }
+}
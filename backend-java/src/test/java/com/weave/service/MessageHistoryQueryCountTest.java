@@ -0,0 +1,123 @@
+package com.weave.service;
+
+import com.weave.dto.MessagePageDTO;
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Group;
+import com.weave.model.Message;
+import com.weave.model.Thread;
+import com.weave.model.User;
+import com.weave.repository.MessageRepository;
+import com.weave.repository.ThreadRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.jpa.test.autoconfigure.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Loading a page of thread history must cost the same number of statements whatever the
+ * page size: the keyset page query plus one bulk query for the entity IDs.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+    // H2 has no jsonb; map the entities' columnDefinition onto its JSON type
+    "spring.datasource.url=jdbc:h2:mem:history;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS JSON",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class MessageHistoryQueryCountTest {
+    private static final int MESSAGES = 60;
+    private static final int ENTITIES_PER_MESSAGE = 2;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ThreadRepository threadRepository;
+
+    private MessageService messageService;
+    private UUID threadId;
+
+    @BeforeEach
+    void setUp() {
+        // getMessagePage only reads through the repositories
+        messageService = new MessageService(messageRepository, threadRepository, mock(ThreadService.class),
+            mock(EntityExtractionPipeline.class), mock(RealtimeNotificationService.class), mock(SearchService.class));
+
+        Group group = new Group();
+        group.setName("Group");
+        entityManager.persist(group);
+
+        User sender = new User();
+        sender.setName("Sender");
+        sender.setFirebaseUid("uid-" + UUID.randomUUID());
+        entityManager.persist(sender);
+
+        Thread thread = new Thread();
+        thread.setGroup(group);
+        thread.setLastActivity(Instant.now());
+        entityManager.persist(thread);
+        threadId = thread.getId();
+
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = new Message();
+            message.setThread(thread);
+            message.setSender(sender);
+            message.setType(Message.MessageType.TEXT);
+            message.setContent("Message " + i);
+            entityManager.persist(message);
+            for (int j = 0; j < ENTITIES_PER_MESSAGE; j++) {
+                ExtractedEntity entity = new ExtractedEntity();
+                entity.setType(ExtractedEntity.EntityType.PLAN);
+                entity.setTitle("Entity " + i + "." + j);
+                entity.setOwner(sender);
+                entity.setThread(thread);
+                entity.setMessage(message);
+                entityManager.persist(entity);
+                message.getEntities().add(entity);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void newestPageIsTwoStatementsWhateverItsSize() {
+        assertEquals(2, statementsFor(() -> messageService.getMessagePage(threadId, null, null, 5)));
+        assertEquals(2, statementsFor(() -> messageService.getMessagePage(threadId, null, null, 50)));
+    }
+
+    @Test
+    void olderPagesAreTwoStatementsEach() {
+        MessagePageDTO newest = messageService.getMessagePage(threadId, null, null, 20);
+        assertNotNull(newest.getOlderCursor());
+        assertEquals(ENTITIES_PER_MESSAGE, newest.getMessages().get(0).getEntities().size());
+        entityManager.clear();
+
+        String before = newest.getOlderCursor();
+        assertEquals(2, statementsFor(() -> messageService.getMessagePage(threadId, before, null, 20)));
+    }
+
+    private long statementsFor(Runnable load) {
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+            .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        load.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
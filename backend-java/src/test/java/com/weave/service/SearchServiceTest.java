@@ -0,0 +1,72 @@
+package com.weave.service;
+
+import com.weave.dto.SearchPageDTO;
+import com.weave.model.ExtractedEntity;
+import com.weave.model.Thread;
+import com.weave.model.User;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.MessageRepository;
+import com.weave.repository.ThreadParticipantRepository;
+import com.weave.search.ScoredDocument;
+import com.weave.search.SearchBackend;
+import com.weave.search.SearchDocument;
+import com.weave.security.FirebaseAuthentication;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pages are cached under the normalized query, so queries that normalize alike must build
+ * identical pages.
+ */
+class SearchServiceTest {
+    private final User currentUser = new User(UUID.randomUUID(), "Ada", "ada@example.com", null, false, null, "ada");
+    private final UUID threadId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void fallbackReasonQuotesTheNormalizedQuery() {
+        // The title matches but only the description is highlighted, so the reason falls back to the query
+        Thread thread = new Thread(threadId, null, "Plans", null, 0, 0.0, null, 0, null, null, null);
+        ExtractedEntity entity = new ExtractedEntity(UUID.randomUUID(), null, "Dinner", "at the café", null, null,
+            thread, null, null, null, null, null, null, null, null);
+        ScoredDocument hit = new ScoredDocument(
+            new SearchDocument(entity.getId(), SearchDocument.Type.ENTITY, threadId, Instant.now().toEpochMilli()), 2.0);
+
+        ExtractedEntityRepository entities = mock(ExtractedEntityRepository.class);
+        when(entities.findAllById(any())).thenReturn(List.of(entity));
+        ThreadParticipantRepository participants = mock(ThreadParticipantRepository.class);
+        when(participants.findThreadIdsByUserId(currentUser.getId())).thenReturn(List.of(threadId));
+        SearchBackend backend = mock(SearchBackend.class);
+        when(backend.pin(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(backend.search(any(), any(), any(), anyInt())).thenReturn(List.of(hit));
+        SearchService searchService = new SearchService(entities, mock(MessageRepository.class), participants, backend,
+            new SimpleMeterRegistry(), 10);
+        SecurityContextHolder.getContext().setAuthentication(new FirebaseAuthentication(currentUser));
+
+        SearchPageDTO shouted = searchService.search("  DINNER!", 10, null);
+        SearchPageDTO plain = searchService.search("dinner", 10, null);
+
+        assertEquals("Entity matches query: \"dinner\"", shouted.getResults().get(0).getWhyReturned());
+        assertEquals(shouted.getResults().get(0).getWhyReturned(), plain.getResults().get(0).getWhyReturned());
+        // The second query was answered from the cache
+        verify(backend, times(1)).search(any(), any(), any(), anyInt());
+    }
+}
@@ -0,0 +1,104 @@
+package com.weave.service;
+
+import com.weave.dto.SuggestionDTO;
+import com.weave.model.Thread;
+import com.weave.model.User;
+import com.weave.repository.ExtractedEntityRepository;
+import com.weave.repository.ThreadParticipantRepository;
+import com.weave.repository.ThreadRepository;
+import com.weave.repository.UserRepository;
+import com.weave.security.FirebaseAuthentication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Labels written inside a transaction must reach the suggest index only once it commits.
+ */
+class SuggestServiceTest {
+    private final User currentUser = new User(UUID.randomUUID(), "Ada", "ada@example.com", null, false, null, "ada");
+    private final UUID threadId = UUID.randomUUID();
+    private final TransactionTemplate transaction = new TransactionTemplate(new NoOpTransactionManager());
+    private SuggestService suggestService;
+
+    @BeforeEach
+    void setUp() {
+        ThreadParticipantRepository participants = mock(ThreadParticipantRepository.class);
+        when(participants.findThreadIdsByUserId(currentUser.getId())).thenReturn(List.of(threadId));
+        suggestService = new SuggestService(mock(ThreadRepository.class), mock(ExtractedEntityRepository.class),
+            mock(UserRepository.class), participants);
+        SecurityContextHolder.getContext().setAuthentication(new FirebaseAuthentication(currentUser));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void labelsAppearOnceTheTransactionCommits() {
+        transaction.executeWithoutResult(status -> {
+            suggestService.addThread(thread("Dinner plans"));
+            assertEquals(List.of(), labels("dinn"));
+        });
+        assertEquals(List.of("Dinner plans"), labels("dinn"));
+    }
+
+    @Test
+    void labelsOfARolledBackTransactionNeverAppear() {
+        assertThrows(IllegalStateException.class, () -> transaction.executeWithoutResult(status -> {
+            suggestService.addThread(thread("Dinner plans"));
+            throw new IllegalStateException("insert failed");
+        }));
+        assertEquals(List.of(), labels("dinn"));
+    }
+
+    @Test
+    void labelsWrittenOutsideATransactionAppearImmediately() {
+        suggestService.addThread(thread("Dinner plans"));
+        assertEquals(List.of("Dinner plans"), labels("dinn"));
+    }
+
+    private Thread thread(String title) {
+        return new Thread(threadId, null, title, null, 0, 0.0, null, 0, null, null, null);
+    }
+
+    private List<String> labels(String query) {
+        return suggestService.suggest(query, false, 10).stream().map(SuggestionDTO::getLabel).toList();
+    }
+
+    /**
+     * Drives transaction synchronization without a database.
+     */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}